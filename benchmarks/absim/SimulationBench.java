@@ -0,0 +1,126 @@
+/*
+ * Copyright All rights reserved.
+ * File: SimulationBench.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import absim.SimulationThread.Direction;
+
+import bench.Harness;
+
+/**
+ * Benchmarks of Simulation.update() and each of its phases.
+ *
+ * System properties (comma separated):
+ *   bench.grid  ocean sizes (default 100,1000,10000)
+ *   bench.oil   initial oil grids (default 1000,10000,100000)
+ *   bench.boats fleet sizes (default 1,100,1000)
+ *   bench.concentrationGrid ocean sizes of the concentration kernel (default 100,1000,4000)
+ *   bench.threads           its threads, 0=single-threaded (default 0,2,4)
+ * @author Mon-Hong Shen
+ */
+public class SimulationBench {
+
+	// ticks of Simulation.update from one spill, far from cleaning it or letting it grow much
+	static final int UPDATE_TICKS = 50;
+
+	/**
+	 * a SimulationType0 with the given ocean size, oil grids and boats.
+	 * @param grid
+	 * @param oil
+	 * @param boats
+	 */
+	static Simulation newSimulation(int grid, int oil, int boats) {
+		Simulation sim = new SimulationType0();
+		sim.setOceanSize(grid, grid);
+		sim.start();
+
+		Random random = new Random(31L * grid + oil); // same oil for every iteration
+		while (sim.oilField.size() < oil)
+			sim.oilField.add(random.nextInt(grid+1), random.nextInt(grid+1), Simulation.ORG_LEVEL);
+		for (int i = 1; i < boats; i++)
+			sim.newBoatToList();
+		return sim;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		Harness.printHeader();
+		for (int grid : Harness.params("bench.grid", "100,1000,10000")) {
+			for (int oil : Harness.params("bench.oil", "1000,10000,100000")) {
+				if (oil > (long) (grid+1) * (grid+1) / 2) continue; // not a sparse spill anymore
+
+				for (int boats : Harness.params("bench.boats", "1,100,1000")) {
+					String params = String.format("grid=%d oil=%d boats=%d", grid, oil, boats);
+
+					// one full tick, from the same spill every UPDATE_TICKS ticks
+					Harness.run("Simulation.update", params, () -> {
+						Simulation sim = newSimulation(grid, oil, boats);
+						return () -> {
+							sim.update();
+							if (sim.getCleanTick() >= 0)
+								throw new IllegalStateException("cleaned within " + UPDATE_TICKS + " ticks: " + params);
+						};
+					}, UPDATE_TICKS);
+
+					// every phase fires on every call
+					Harness.run("Simulation.darkerExistingOil", params, () -> {
+						Simulation sim = newSimulation(grid, oil, boats);
+						sim.maxDarkerFlg = 1;
+						return sim::darkerExistingOil;
+					});
+					Harness.run("Simulation.diffuseOilByWind", params, () -> {
+						Simulation sim = newSimulation(grid, oil, boats);
+						sim.maxWindIntensityFlg = 1;
+						return sim::diffuseOilByWind;
+					});
+					Harness.run("Simulation.changeWindDirection", params, () -> {
+						Simulation sim = newSimulation(grid, oil, boats);
+						sim.maxWindDirectionFlg = 1;
+						return sim::changeWindDirection;
+					});
+					Harness.run("Simulation.moveBoats", params, () -> {
+						Simulation sim = newSimulation(grid, oil, boats);
+						return sim::moveBoats;
+					});
+					Harness.run("Boat.clean", params, () -> {
+						Simulation sim = newSimulation(grid, oil, boats);
+						Boat boat = sim.getBoatList().get(0);
+						return () -> boat.clean(sim.oilField);
+					});
+					Harness.run("OilField.nearestUnclaimed", params, () -> {
+						Simulation sim = newSimulation(grid, oil, boats);
+						Random random = new Random(grid);
+						return () -> sim.oilField.nearestUnclaimed(random.nextInt(grid+1), random.nextInt(grid+1));
+					});
+				}
+			}
+		}
+
+		// the concentration kernel is a pass over the whole ocean, the oil doesn't matter
+		for (int grid : Harness.params("bench.concentrationGrid", "100,1000,4000")) {
+			for (int threads : Harness.params("bench.threads", "0,2,4")) {
+				ForkJoinPool pool = (threads == 0) ? null : new ForkJoinPool(threads);
+				Harness.run("ConcentrationField.step", String.format("grid=%d threads=%d", grid, threads), () -> {
+					OilField oilField = new OilField(grid+1, grid+1);
+					Random random = new Random(grid);
+					for (int i = 0; i < 1000; i++)
+						oilField.add(random.nextInt(grid+1), random.nextInt(grid+1), Simulation.ORG_LEVEL);
+					ConcentrationField field = new ConcentrationField(oilField);
+					return () -> field.step(Direction.WEST, pool);
+				});
+				if (pool != null)
+					pool.shutdown();
+			}
+		}
+	}
+}
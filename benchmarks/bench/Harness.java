@@ -0,0 +1,156 @@
+/*
+ * Copyright All rights reserved.
+ * File: Harness.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A small benchmark harness: warmup, then timed iterations of an operation.
+ * Every iteration starts from a fresh state built by the setup,
+ * an operation wearing its state out (e.g. cleaning oil) can be rebuilt after a fixed number of runs,
+ * and reports the throughput (ops/s) and the allocation (bytes/op) of the current thread.
+ *
+ * System properties:
+ *   bench.warmup     warmup iterations (default 3)
+ *   bench.iterations measured iterations (default 5)
+ *   bench.time       milliseconds per iteration (default 1000)
+ * @author Mon-Hong Shen
+ */
+public final class Harness {
+
+	private static final int WARMUP = Integer.getInteger("bench.warmup", 3);
+	private static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+	private static final long TIME_NANOS = Long.getLong("bench.time", 1000L) * 1_000_000L;
+	private static final long BATCH_NANOS = 100_000L; // don't read the clock more often
+
+	private Harness() {
+	}
+
+	/**
+	 * the operation under benchmark, built freshly for every iteration
+	 */
+	public interface Setup {
+		Runnable newOp();
+	}
+
+	/**
+	 * read an int list parameter, e.g. -Dbench.grid=100,1000
+	 * @param name
+	 * @param defaultValue
+	 */
+	public static int[] params(String name, String defaultValue) {
+		String[] values = System.getProperty(name, defaultValue).split(",");
+		int[] params = new int[values.length];
+		for (int i = 0; i < values.length; i++)
+			params[i] = Integer.parseInt(values[i].trim());
+		return params;
+	}
+
+	/**
+	 * print the header of the result table
+	 */
+	public static void printHeader() {
+		System.out.printf("%-36s %-28s %16s %12s %14s%n", "Benchmark", "Params", "ops/s", "error", "bytes/op");
+	}
+
+	/**
+	 * run and print one benchmark
+	 * @param name
+	 * @param params
+	 * @param setup
+	 */
+	public static void run(String name, String params, Setup setup) {
+		run(name, params, setup, Long.MAX_VALUE);
+	}
+
+	/**
+	 * run and print one benchmark whose operation is rebuilt by the setup after every maxOps runs,
+	 * the rebuilding isn't timed nor counted in bytes/op
+	 * @param name
+	 * @param params
+	 * @param setup
+	 * @param maxOps the runs of one operation at most
+	 */
+	public static void run(String name, String params, Setup setup, long maxOps) {
+		for (int i = 0; i < WARMUP; i++)
+			iteration(setup, maxOps, new long[2]);
+
+		double[] opsPerSec = new double[ITERATIONS];
+		long ops = 0;
+		long bytes = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			long[] result = new long[2];
+			long nanos = iteration(setup, maxOps, result);
+			opsPerSec[i] = result[0] * 1e9 / nanos;
+			ops += result[0];
+			bytes += result[1];
+		}
+
+		double mean = 0;
+		for (double v : opsPerSec) mean += v;
+		mean /= ITERATIONS;
+		double var = 0;
+		for (double v : opsPerSec) var += (v - mean) * (v - mean);
+		double error = ITERATIONS > 1 ? Math.sqrt(var / (ITERATIONS - 1)) : 0;
+		String bytesPerOp = bytes < 0 ? "n/a" : String.format("%.1f", (double) bytes / ops);
+		System.out.printf("%-36s %-28s %16.1f %12.1f %14s%n", name, params, mean, error, bytesPerOp);
+	}
+
+	/**
+	 * run the operation in growing batches for TIME_NANOS, rebuilt after every maxOps runs
+	 * @param setup
+	 * @param maxOps
+	 * @param result {ops, allocated bytes}
+	 * @return elapsed nanos, without the rebuilding
+	 */
+	private static long iteration(Setup setup, long maxOps, long[] result) {
+		Runnable op = setup.newOp();
+		long opsOfOp = 0;
+		long elapsed = 0;
+		long bytes = 0;
+		long ops = 0;
+		int batch = 1;
+		while (elapsed < TIME_NANOS) {
+			if (opsOfOp == maxOps) {
+				op = setup.newOp();
+				opsOfOp = 0;
+			}
+			int runs = (int) Math.min(batch, maxOps - opsOfOp);
+			long startBytes = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < runs; i++)
+				op.run();
+			long nanos = System.nanoTime() - start;
+			long endBytes = allocatedBytes();
+			bytes = (bytes < 0 || startBytes < 0 || endBytes < 0) ? -1 : bytes + endBytes - startBytes;
+			elapsed += nanos;
+			ops += runs;
+			opsOfOp += runs;
+			if (nanos < BATCH_NANOS && batch < (1 << 20))
+				batch <<= 1;
+		}
+		result[0] = ops;
+		result[1] = bytes;
+		return elapsed;
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread, or -1 if the JVM can't tell
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled())
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright All rights reserved.
+ * File: CanvasBench.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package ui;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import absim.OilField;
+import absim.SimulationEngine;
+import absim.SimulationType0;
+import bench.Harness;
+
+/**
+ * Benchmark of MyCanvas.drawCanvas into an offscreen image (no display needed).
+ *
+ * System properties (comma separated):
+ *   bench.grid  ocean sizes (default 100,1000)
+ *   bench.oil   oil grids (default 1000,10000)
+ *   bench.boats fleet sizes (default 1,100)
+ * @author Mon-Hong Shen
+ */
+public class CanvasBench {
+
+	private static final int WIDTH = 740;
+	private static final int HEIGHT = 660;
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		Harness.printHeader();
+		for (int grid : Harness.params("bench.grid", "100,1000")) {
+			for (int oil : Harness.params("bench.oil", "1000,10000")) {
+				if (oil > (long) (grid+1) * (grid+1) / 2) continue;
+
+				for (int boats : Harness.params("bench.boats", "1,100")) {
+					String params = String.format("grid=%d oil=%d boats=%d", grid, oil, boats);
+					Harness.run("MyCanvas.drawCanvas", params, () -> {
+						MyCanvas canvas = newCanvas(grid, oil, boats);
+						BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+						Graphics2D g2d = image.createGraphics();
+						return () -> canvas.drawCanvas(g2d);
+					});
+				}
+			}
+		}
+	}
+
+	/**
+	 * a canvas showing a simulation with the given ocean size, oil grids and boats
+	 */
+	private static MyCanvas newCanvas(int grid, int oil, int boats) {
+		SimulationType0 sim = new SimulationType0();
+		sim.setOceanSize(grid, grid);
+		new SimulationEngine(sim).start(); // initialize only, no simulation thread
+		sim.clearOilGridSim();
+
+		OilField oilField = sim.getOilField();
+		Random random = new Random(31L * grid + oil);
+		while (oilField.size() < oil)
+			oilField.add(random.nextInt(grid+1), random.nextInt(grid+1), 0);
+		for (int i = 1; i < boats; i++)
+			sim.newBoatSim();
+
+		MyCanvas canvas = new MyCanvas();
+		canvas.setSize(WIDTH, HEIGHT);
+		sim.publish();
+		canvas.update(sim.getSnapshot());
+		return canvas;
+	}
+}
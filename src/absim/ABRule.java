@@ -8,20 +8,29 @@
  */
 package absim;
 
-import java.util.LinkedList;
-
 /**
  * The behavior of a boat instance on the ocean
  * @author Mon-Hong Shen
  */
 public interface ABRule {
 	
+	/**
+	 * which oil grid a boat cleans next
+	 * OLDEST:  the oldest oil grid of the ocean
+	 * NEAREST: the nearest oil grid to the boat
+	 * DISPATCHED: the oil grid assigned by the Dispatcher, every boat has its own
+	 * GRADIENT: one move down the distance field of the oil (see OilDistanceField)
+	 */
+	enum CleanMode { OLDEST, NEAREST, DISPATCHED, GRADIENT }
+	
 	void forceStop();
 	
 	void restart(int x, int y); // restart from port
 	
 	void moveTo(int x, int y);
 	
-	void clean(LinkedList<OceanGrid> oilList);
+	void clean(OilField oilField);
+	
+	void setCleanMode(CleanMode cleanMode);
 	
 }
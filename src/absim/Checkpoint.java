@@ -0,0 +1,168 @@
+/*
+ * Copyright All rights reserved.
+ * File: Checkpoint.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The whole state of a simulation between two ticks, in a compact versioned binary format:
+ * ocean size, seed and random state, tick counters, phase counters (darkerFlg, windIntensityFlg, ...),
+ * wind, clean mode, dispatcher, every oil grid in insertion order with its birth age, every boat, the depots
+ * and the oil concentrations and regional winds (CONCENTRATION and WIND_FIELD diffusion).
+ * Files are written and read through memory-mapped NIO buffers.
+ * A checkpoint can be restored any number of times, each restore is an independent simulation,
+ * and fork() gives every copy its own random numbers to run a warm-started scenario many times.
+ * A restored simulation continues with SimulationEngine.step(), it must not be start()ed again.
+ *
+ * Format (big endian): int MAGIC, short VERSION, short n, n bytes simulation class (UTF-8),
+ * then the state written by Simulation.writeTo().
+ * @author Mon-Hong Shen
+ */
+public final class Checkpoint {
+
+	static final int MAGIC = 0x41424350; // "ABCP"
+	static final short VERSION = 4; // 2: depots, 3: diffusion and concentrations, 4: wind field
+
+	private final ByteBuffer data; // the whole checkpoint, from position 0
+
+	private Checkpoint(ByteBuffer data) {
+		this.data = data;
+	}
+
+	/**
+	 * copy the state of a simulation into memory.
+	 * a running simulation is copied between two ticks.
+	 * @param sim
+	 */
+	public static Checkpoint of(Simulation sim) {
+		synchronized (sim.getLock()) {
+			byte[] className = className(sim);
+			ByteBuffer data = ByteBuffer.allocate(size(sim, className));
+			write(sim, className, data);
+			data.flip();
+			return new Checkpoint(data);
+		}
+	}
+
+	/**
+	 * write the state of a simulation into a file, replacing an existing one
+	 * @param sim
+	 * @param path
+	 */
+	public static void save(Simulation sim, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			synchronized (sim.getLock()) {
+				byte[] className = className(sim);
+				MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size(sim, className));
+				write(sim, className, data);
+				data.force();
+			}
+		}
+	}
+
+	/**
+	 * map a checkpoint file, the file is only read when restored
+	 * @param path
+	 */
+	public static Checkpoint read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (data.remaining() < 8 || data.getInt(0) != MAGIC)
+				throw new IOException("not a checkpoint: " + path);
+			short version = data.getShort(4);
+			if (version < 1 || version > VERSION)
+				throw new IOException("unsupported checkpoint version: " + version);
+			return new Checkpoint(data);
+		}
+	}
+
+	/**
+	 * write the checkpoint into a file, replacing an existing one
+	 * @param path
+	 */
+	public void write(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, data.limit());
+			out.put(data.duplicate());
+			out.force();
+		}
+	}
+
+	/**
+	 * @return the size in bytes
+	 */
+	public int size() {
+		return data.limit();
+	}
+
+	/**
+	 * @return a new simulation in exactly the saved state, the same random numbers included
+	 */
+	public Simulation restore() {
+		ByteBuffer in = data.duplicate();
+		try {
+			int version = in.getShort(4);
+			in.position(6); // after MAGIC and VERSION
+			byte[] className = new byte[in.getShort() & 0xFFFF];
+			in.get(className);
+			Simulation sim = newSimulation(new String(className, StandardCharsets.UTF_8));
+			sim.readFrom(in, version);
+			return sim;
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalStateException("corrupt checkpoint", e);
+		}
+	}
+
+	/**
+	 * @param seed the random numbers of the copy from now on
+	 * @return a new simulation in the saved state, continuing with its own random numbers
+	 */
+	public Simulation fork(long seed) {
+		Simulation sim = restore();
+		sim.setSeed(seed);
+		sim.random.setState(seed);
+		return sim;
+	}
+
+	private static byte[] className(Simulation sim) {
+		return sim.getClass().getName().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int size(Simulation sim, byte[] className) {
+		long size = 4 + 2 + 2 + className.length + sim.checkpointBytes();
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalStateException("the simulation is too large for a checkpoint: " + size + " bytes");
+		return (int) size;
+	}
+
+	private static void write(Simulation sim, byte[] className, ByteBuffer out) {
+		out.putInt(MAGIC);
+		out.putShort(VERSION);
+		out.putShort((short) className.length);
+		out.put(className);
+		sim.writeTo(out);
+	}
+
+	private static Simulation newSimulation(String className) {
+		try {
+			return Simulation.newInstance(className);
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IllegalStateException("unknown simulation: " + className, e);
+		}
+	}
+}
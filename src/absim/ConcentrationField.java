@@ -0,0 +1,399 @@
+/*
+ * Copyright All rights reserved.
+ * File: ConcentrationField.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import absim.SimulationThread.Direction;
+
+/**
+ * Oil as a concentration per grid instead of discrete oil grids:
+ * one float per grid, in two arrays of width*height swapped after every step.
+ * step() is one pass over the ocean applying a 5-point stencil:
+ * diffusion to the 4 neighbors, drift downwind (upwind scheme), then evaporation.
+ * The wind is one direction for the whole ocean, or a WindField with a vector per region.
+ * The weights are kept in a table per region, rebuilt only when the wind changes,
+ * and a grid sends its oil with the weights of its own region, so the oil is conserved
+ * across regions. The ocean's border reflects the diffusion, oil drifting into it is washed ashore
+ * and no oil drifts out of it.
+ * Inside a region the weights are constant: the inner loop over a row of a region
+ * has no branch and no object, so the JIT unrolls and vectorizes it
+ * and the cost of a tick is linear in the ocean size, whatever the spill.
+ *
+ * The oil field stays the view of the boats and the UI: a grid is oil while its concentration
+ * is at least THRESHOLD, only the grids crossing the threshold are added to or removed from it.
+ * An oil grid added to the oil field (new oil) gets SPILL,
+ * a boat cleaning a grid skims SKIM of its concentration, thick oil stays and needs more boats.
+ * @author Mon-Hong Shen
+ */
+public final class ConcentrationField {
+
+	public static final float SPILL = 1f;        // concentration of a new oil grid
+	public static final float THRESHOLD = 0.05f; // an oil grid from this concentration on
+	public static final float SKIM = 1f;         // removed by a boat cleaning a grid
+	static final float DIFFUSION = 0.05f;        // to each of the 4 neighbors, per tick
+	static final float DRIFT = 0.04f;            // downwind, per tick
+	static final float DECAY = 0.001f;           // evaporation, per tick
+	private static final int BAND_ROWS = 32;     // rows per fork-join task
+	// the border gives back the diffusion only: no oil drifts out of it, the drift into it is lost
+	private static final float REFLECT = (1f - DECAY) * DIFFUSION;
+
+	private final OilField oilField;
+	private final int width;
+	private final int height;
+	private float[] current;
+	private float[] next;
+	// grids skimmed by boats and still thick, added back to the oil field by the next step
+	private int[] skimmed = new int[16];
+	private int skimmedCount;
+	private boolean syncing; // the oil field changes because of this field
+	// the stencil tables, by region: the part of its oil a grid keeps and sends to each neighbor
+	private final int regionsX;
+	private final float[] keeps;
+	private final float[] toEast;
+	private final float[] toWest;
+	private final float[] toSouth; // y+1
+	private final float[] toNorth; // y-1
+	private Direction tableWind;       // the wind of the tables, or null
+	private WindField tableField;      // the wind field of the tables, or null
+	private int tableVersion;
+	// the threshold crossings found by every band during a step
+	private int[][] crossings = new int[0][];
+	private int[] crossingCount = new int[0];
+
+	/**
+	 * a new field with SPILL on every grid of the oil field, then follow its changes
+	 * @param oilField
+	 */
+	public ConcentrationField(OilField oilField) {
+		this.oilField = oilField;
+		this.width = oilField.getWidth();
+		this.height = oilField.getHeight();
+		this.current = new float[width * height];
+		this.next = new float[width * height];
+		this.regionsX = (width + WindField.REGION - 1) >>> WindField.REGION_SHIFT;
+		int regions = regionsX * ((height + WindField.REGION - 1) >>> WindField.REGION_SHIFT);
+		this.keeps = new float[regions];
+		this.toEast = new float[regions];
+		this.toWest = new float[regions];
+		this.toSouth = new float[regions];
+		this.toNorth = new float[regions];
+		for (int cell = oilField.first(); cell != OilField.NONE; cell = oilField.next(cell))
+			current[cell] = SPILL;
+		oilField.addListener(follower);
+	}
+
+	public OilField getOilField() {
+		return oilField;
+	}
+
+	/**
+	 * stop following the oil field
+	 */
+	public void detach() {
+		oilField.removeListener(follower);
+	}
+
+	public float get(int x, int y) {
+		return current[y * width + x];
+	}
+
+	/**
+	 * @return the oil of the whole ocean
+	 */
+	public double total() {
+		double total = 0;
+		for (float c : current)
+			total += c;
+		return total;
+	}
+
+	// keeps the concentration in line with the oil added, cleaned and cleared by others
+	private final OilField.Listener follower = new OilField.Listener() {
+		@Override
+		public void added(int cell) {
+			if (!syncing)
+				current[cell] = Math.max(current[cell], SPILL);
+		}
+
+		@Override
+		public void removed(int cell) {
+			if (syncing) return;
+			float left = Math.max(current[cell] - SKIM, 0f);
+			current[cell] = left;
+			if (left >= THRESHOLD) {
+				if (skimmedCount == skimmed.length)
+					skimmed = Arrays.copyOf(skimmed, skimmedCount * 2);
+				skimmed[skimmedCount++] = cell;
+			}
+		}
+
+		@Override
+		public void cleared() {
+			if (syncing) return;
+			Arrays.fill(current, 0f);
+			skimmedCount = 0;
+		}
+	};
+
+	/**
+	 * one tick of diffusion, drift and evaporation over the whole ocean, on the calling thread,
+	 * then the grids crossing THRESHOLD are added to or removed from the oil field
+	 * @param wind the oil drifts like the edge diffusion: WEST=x+, EAST=x-, NORTH=y+, SOUTH=y-
+	 */
+	public void step(Direction wind) {
+		step(wind, null);
+	}
+
+	/**
+	 * step() with the ocean split into bands of BAND_ROWS rows running on a fork-join pool.
+	 * A band reads the rows around it (its halo) from the previous concentrations, shared and
+	 * read-only during the step, and writes only its own rows, so the bands need no lock and the
+	 * swap of the two arrays after the step is the halo exchange.
+	 * Every grid gets the same value whatever band computes it, and the threshold crossings found
+	 * by the bands are applied to the oil field in row order after the step:
+	 * the result is identical to the single-threaded step.
+	 * @param pool null=on the calling thread
+	 */
+	public void step(Direction wind, ForkJoinPool pool) {
+		if (tableWind != wind) {
+			float u = (wind == Direction.WEST) ? 1f : (wind == Direction.EAST) ? -1f : 0f;
+			float v = (wind == Direction.NORTH) ? 1f : (wind == Direction.SOUTH) ? -1f : 0f;
+			for (int r = 0; r < keeps.length; r++)
+				setStencil(r, u, v);
+			tableWind = wind;
+			tableField = null;
+		}
+		step(pool);
+	}
+
+	/**
+	 * step() with a wind vector per region
+	 * @param windField of the same ocean size
+	 * @param pool null=on the calling thread
+	 */
+	public void step(WindField windField, ForkJoinPool pool) {
+		if (tableField != windField || tableVersion != windField.getVersion()) {
+			for (int r = 0; r < keeps.length; r++)
+				setStencil(r, windField.getU(r), windField.getV(r));
+			tableField = windField;
+			tableVersion = windField.getVersion();
+			tableWind = null;
+		}
+		step(pool);
+	}
+
+	/**
+	 * the weights of a region with the wind (u, v)
+	 */
+	private void setStencil(int region, float u, float v) {
+		float keep = 1f - DECAY;
+		toEast[region]  = keep * (DIFFUSION + DRIFT * Math.max(u, 0f));
+		toWest[region]  = keep * (DIFFUSION + DRIFT * Math.max(-u, 0f));
+		toSouth[region] = keep * (DIFFUSION + DRIFT * Math.max(v, 0f));
+		toNorth[region] = keep * (DIFFUSION + DRIFT * Math.max(-v, 0f));
+		keeps[region] = keep * (1f - 4*DIFFUSION - DRIFT * (Math.abs(u) + Math.abs(v)));
+	}
+
+	private void step(ForkJoinPool pool) {
+		int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+		if (crossings.length < bands) {
+			crossings = Arrays.copyOf(crossings, bands);
+			crossingCount = Arrays.copyOf(crossingCount, bands);
+		}
+		if (pool == null) {
+			for (int band = 0; band < bands; band++)
+				band(band);
+		}
+		else {
+			pool.invoke(new BandTask(0, bands));
+		}
+
+		float[] c = current;
+		current = next;
+		next = c;
+		sync(bands);
+	}
+
+	/**
+	 * compute the rows of a band, then find the grids crossing THRESHOLD
+	 */
+	private void band(int band) {
+		float[] c = current;
+		float[] n = next;
+		int w = width;
+		int fromY = band * BAND_ROWS;
+		int toY = Math.min(fromY + BAND_ROWS, height);
+		for (int y = fromY; y < toY; y++) {
+			int row = y * w;
+			int northY = (y == 0) ? y : y-1;             // the border reflects
+			int southY = (y == height-1) ? y : y+1;
+			int up = northY * w;
+			int down = southY * w;
+			if (tableWind != null) {
+				// a uniform wind, every region has the weights of region 0
+				float fromNorth = (y == 0) ? REFLECT : toSouth[0];
+				float fromSouth = (y == height-1) ? REFLECT : toNorth[0];
+				inner(c, n, row, up, down, 1, w-1, keeps[0], toEast[0], toWest[0], fromNorth, fromSouth);
+				edge(c, n, y, up, down, 0);
+				if (w > 1)
+					edge(c, n, y, up, down, w-1);
+				continue;
+			}
+			int region = (y >>> WindField.REGION_SHIFT) * regionsX;
+			int northRegion = (northY >>> WindField.REGION_SHIFT) * regionsX;
+			int southRegion = (southY >>> WindField.REGION_SHIFT) * regionsX;
+			for (int rx = 0; rx < regionsX; rx++) {
+				// the inner grids of the region's row take oil from grids of the same region
+				// or the same column of regions, their weights are constant
+				int x0 = rx << WindField.REGION_SHIFT;
+				int x1 = Math.min(x0 + WindField.REGION, w) - 1;
+				int r = region + rx;
+				float self = keeps[r];
+				float fromWest = toEast[r];
+				float fromEast = toWest[r];
+				float fromNorth = (y == 0) ? REFLECT : toSouth[northRegion + rx];
+				float fromSouth = (y == height-1) ? REFLECT : toNorth[southRegion + rx];
+				inner(c, n, row, up, down, x0+1, x1, self, fromWest, fromEast, fromNorth, fromSouth);
+				edge(c, n, y, up, down, x0);
+				if (x1 > x0)
+					edge(c, n, y, up, down, x1);
+			}
+		}
+
+		// cell=added, ~cell=removed
+		int[] found = crossings[band];
+		if (found == null) found = new int[16];
+		int count = 0;
+		for (int cell = fromY * w; cell < toY * w; cell++) {
+			boolean was = c[cell] >= THRESHOLD;
+			boolean is = n[cell] >= THRESHOLD;
+			if (was == is) continue;
+			if (count == found.length)
+				found = Arrays.copyOf(found, count * 2);
+			found[count++] = is ? cell : ~cell;
+		}
+		crossings[band] = found;
+		crossingCount[band] = count;
+	}
+
+	/**
+	 * the grids from x0 to x1 (exclusive) of a row, with the same weights
+	 */
+	private static void inner(float[] c, float[] n, int row, int up, int down, int x0, int x1,
+			float self, float fromWest, float fromEast, float fromNorth, float fromSouth) {
+		for (int x = x0; x < x1; x++) {
+			n[row+x] = self * c[row+x]
+					+ fromWest * c[row+x-1] + fromEast * c[row+x+1]
+					+ fromNorth * c[up+x] + fromSouth * c[down+x];
+		}
+	}
+
+	/**
+	 * a grid at the first or last column of a region, its west or east neighbor
+	 * can be in another region or the border
+	 */
+	private void edge(float[] c, float[] n, int y, int up, int down, int x) {
+		int row = y * width;
+		int west = (x == 0) ? x : x-1;
+		int east = (x == width-1) ? x : x+1;
+		float fromWest = (x == 0) ? REFLECT : toEast[regionOf(west, y)];
+		float fromEast = (x == width-1) ? REFLECT : toWest[regionOf(east, y)];
+		float fromNorth = (y == 0) ? REFLECT : toSouth[regionOf(x, y-1)];
+		float fromSouth = (y == height-1) ? REFLECT : toNorth[regionOf(x, y+1)];
+		n[row+x] = keeps[regionOf(x, y)] * c[row+x]
+				+ fromWest * c[row+west] + fromEast * c[row+east]
+				+ fromNorth * c[up+x] + fromSouth * c[down+x];
+	}
+
+	private int regionOf(int x, int y) {
+		return (y >>> WindField.REGION_SHIFT) * regionsX + (x >>> WindField.REGION_SHIFT);
+	}
+
+	/**
+	 * add and remove the grids crossing THRESHOLD, in row order, then the skimmed grids still thick
+	 */
+	private void sync(int bands) {
+		syncing = true;
+		try {
+			for (int band = 0; band < bands; band++) {
+				int[] found = crossings[band];
+				for (int i = 0; i < crossingCount[band]; i++) {
+					int cell = found[i];
+					if (cell >= 0) oilField.add(cell % width, cell / width, Simulation.ORG_LEVEL);
+					else oilField.remove(~cell % width, ~cell / width);
+				}
+			}
+			for (int i = 0; i < skimmedCount; i++) {
+				int cell = skimmed[i];
+				if (current[cell] >= THRESHOLD)
+					oilField.add(cell % width, cell / width, Simulation.ORG_LEVEL);
+			}
+			skimmedCount = 0;
+		} finally {
+			syncing = false;
+		}
+	}
+
+	/**
+	 * the bands from 'from' to 'to' (exclusive)
+	 */
+	private final class BandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+
+		BandTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				band(from);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new BandTask(from, mid), new BandTask(mid, to));
+		}
+	}
+
+	long checkpointBytes() {
+		return 4 + 4L * current.length + 4L * skimmedCount;
+	}
+
+	/**
+	 * write the concentrations and the skimmed grids into a checkpoint
+	 */
+	void writeTo(ByteBuffer out) {
+		out.asFloatBuffer().put(current);
+		out.position(out.position() + 4 * current.length);
+		out.putInt(skimmedCount);
+		for (int i = 0; i < skimmedCount; i++)
+			out.putInt(skimmed[i]);
+	}
+
+	/**
+	 * read a field written by writeTo(), following the restored oil field
+	 */
+	static ConcentrationField readFrom(ByteBuffer in, OilField oilField) {
+		ConcentrationField field = new ConcentrationField(oilField);
+		in.asFloatBuffer().get(field.current);
+		in.position(in.position() + 4 * field.current.length);
+		field.skimmedCount = in.getInt();
+		field.skimmed = new int[Math.max(field.skimmedCount, 16)];
+		for (int i = 0; i < field.skimmedCount; i++)
+			field.skimmed[i] = in.getInt();
+		return field;
+	}
+}
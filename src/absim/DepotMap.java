@@ -0,0 +1,159 @@
+/*
+ * Copyright All rights reserved.
+ * File: DepotMap.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The depots of an ocean, where boats recharge and unload, and the nearest one from any grid.
+ * Boats move one grid per tick in 8 directions on open water, so the distance field of a depot
+ * is the Chebyshev distance max(|dx|,|dy|) and needs no storage.
+ * What is precomputed once, and shared by every boat, is a table per tile of TILE x TILE grids
+ * holding the only depots that can be the nearest to a grid of the tile:
+ * nearest() and distance() check those few candidates, O(1) per boat per tick.
+ * Immutable, safe from any thread.
+ * @author Mon-Hong Shen
+ */
+public final class DepotMap implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private static final int TILE_SHIFT = 6;
+	private static final int TILE = 1 << TILE_SHIFT; // 64 x 64 grids
+
+	private final int[] depotX;
+	private final int[] depotY;
+	private final int width;
+	private final int height;
+	private final int tilesX;
+	private final int[] tileStart;   // candidates of tile t: tileDepots[tileStart[t] .. tileStart[t+1]-1]
+	private final int[] tileDepots;
+
+	/**
+	 * @param width the ocean's grids from 0 to width-1
+	 * @param height
+	 * @param depotX the depots, at least one, inside the ocean
+	 * @param depotY
+	 */
+	public DepotMap(int width, int height, int[] depotX, int[] depotY) {
+		if (depotX.length == 0 || depotX.length != depotY.length)
+			throw new IllegalArgumentException("invalid depots: " + depotX.length + " x, " + depotY.length + " y");
+		for (int d = 0; d < depotX.length; d++)
+			if (depotX[d] < 0 || depotX[d] >= width || depotY[d] < 0 || depotY[d] >= height)
+				throw new IllegalArgumentException("depot outside the ocean: (" + depotX[d] + "," + depotY[d] + ")");
+		this.depotX = depotX.clone();
+		this.depotY = depotY.clone();
+		this.width = width;
+		this.height = height;
+		this.tilesX = (width + TILE - 1) >>> TILE_SHIFT;
+		int tilesY = (height + TILE - 1) >>> TILE_SHIFT;
+		int tiles = tilesX * tilesY;
+
+		// a depot is a candidate if its nearest grid of the tile is not farther than
+		// the farthest grid of the tile from the best depot
+		this.tileStart = new int[tiles + 1];
+		int[] candidates = new int[Math.max(depotX.length, 16)];
+		int count = 0;
+		for (int t = 0; t < tiles; t++) {
+			int minX = (t % tilesX) << TILE_SHIFT;
+			int minY = (t / tilesX) << TILE_SHIFT;
+			int maxX = Math.min(minX + TILE, width) - 1;
+			int maxY = Math.min(minY + TILE, height) - 1;
+			long bound = Long.MAX_VALUE;
+			for (int d = 0; d < depotX.length; d++)
+				bound = Math.min(bound, farthest(d, minX, minY, maxX, maxY));
+			tileStart[t] = count;
+			for (int d = 0; d < depotX.length; d++) {
+				if (nearest(d, minX, minY, maxX, maxY) > bound) continue;
+				if (count == candidates.length)
+					candidates = Arrays.copyOf(candidates, count * 2);
+				candidates[count++] = d;
+			}
+		}
+		tileStart[tiles] = count;
+		this.tileDepots = Arrays.copyOf(candidates, count);
+	}
+
+	/**
+	 * @return the number of depots
+	 */
+	public int size() {
+		return depotX.length;
+	}
+
+	public int getX(int depot) {
+		return depotX[depot];
+	}
+
+	public int getY(int depot) {
+		return depotY[depot];
+	}
+
+	/**
+	 * @return the nearest depot from (x, y), the first one if several
+	 */
+	public int nearest(int x, int y) {
+		int t = (y >>> TILE_SHIFT) * tilesX + (x >>> TILE_SHIFT);
+		int best = -1;
+		int bestDistance = Integer.MAX_VALUE;
+		for (int i = tileStart[t]; i < tileStart[t+1]; i++) {
+			int d = tileDepots[i];
+			int distance = distance(d, x, y);
+			if (distance < bestDistance || (distance == bestDistance && d < best)) {
+				best = d;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the ticks to the nearest depot from (x, y)
+	 */
+	public int distance(int x, int y) {
+		return distance(nearest(x, y), x, y);
+	}
+
+	/**
+	 * @return true if every grid of the ocean is at most range ticks from a depot
+	 */
+	public boolean reaches(int range) {
+		for (int t = 0; t < tileStart.length - 1; t++) {
+			int minX = (t % tilesX) << TILE_SHIFT;
+			int minY = (t / tilesX) << TILE_SHIFT;
+			int maxX = Math.min(minX + TILE, width) - 1;
+			int maxY = Math.min(minY + TILE, height) - 1;
+			// the whole tile in reach of one depot, else grid by grid
+			boolean covered = false;
+			for (int i = tileStart[t]; i < tileStart[t+1] && !covered; i++)
+				covered = farthest(tileDepots[i], minX, minY, maxX, maxY) <= range;
+			if (covered) continue;
+			for (int y = minY; y <= maxY; y++)
+				for (int x = minX; x <= maxX; x++)
+					if (distance(x, y) > range) return false;
+		}
+		return true;
+	}
+
+	private int distance(int depot, int x, int y) {
+		return Math.max(Math.abs(depotX[depot] - x), Math.abs(depotY[depot] - y));
+	}
+
+	private long nearest(int depot, int minX, int minY, int maxX, int maxY) {
+		int dx = Math.max(0, Math.max(minX - depotX[depot], depotX[depot] - maxX));
+		int dy = Math.max(0, Math.max(minY - depotY[depot], depotY[depot] - maxY));
+		return Math.max(dx, dy);
+	}
+
+	private long farthest(int depot, int minX, int minY, int maxX, int maxY) {
+		int dx = Math.max(Math.abs(depotX[depot] - minX), Math.abs(depotX[depot] - maxX));
+		int dy = Math.max(Math.abs(depotY[depot] - minY), Math.abs(depotY[depot] - maxY));
+		return Math.max(dx, dy);
+	}
+}
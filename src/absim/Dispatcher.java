@@ -0,0 +1,122 @@
+/*
+ * Copyright All rights reserved.
+ * File: Dispatcher.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Assigns a distinct oil grid to every boat in DISPATCHED mode,
+ * so boats stop converging on the same oil grid.
+ * Greedy matching, every tick: all targets are released, then boats in fleet order
+ * take the nearest oil grid not reserved by an earlier boat (OilField.nearestFree).
+ * The cost is one nearest query per boat per tick, boats returning to a depot get no target.
+ * @author Mon-Hong Shen
+ */
+public class Dispatcher {
+
+	private long assignments;  // targets given to boats (one per boat per tick)
+	private long assignCost;   // sum of the distances from boats to their new targets
+	private long assignNanos;  // time spent assigning
+	private long unassigned;   // boats left without a target, because all oil is reserved
+	static final int CHECKPOINT_BYTES = 8*4; // see writeTo()
+
+	public long getAssignments() {
+		return assignments;
+	}
+
+	public long getAssignCost() {
+		return assignCost;
+	}
+
+	/**
+	 * @return the average distance from a boat to its new target
+	 */
+	public double getAverageAssignCost() {
+		return assignments == 0 ? 0 : (double) assignCost / assignments;
+	}
+
+	public long getAssignNanos() {
+		return assignNanos;
+	}
+
+	public long getUnassigned() {
+		return unassigned;
+	}
+
+	/**
+	 * write the metrics into a checkpoint, CHECKPOINT_BYTES bytes
+	 */
+	void writeTo(ByteBuffer out) {
+		out.putLong(assignments);
+		out.putLong(assignCost);
+		out.putLong(assignNanos);
+		out.putLong(unassigned);
+	}
+
+	/**
+	 * read the metrics written by writeTo()
+	 */
+	void readFrom(ByteBuffer in) {
+		assignments = in.getLong();
+		assignCost = in.getLong();
+		assignNanos = in.getLong();
+		unassigned = in.getLong();
+	}
+
+	void reset() {
+		assignments = 0;
+		assignCost = 0;
+		assignNanos = 0;
+		unassigned = 0;
+	}
+
+	/**
+	 * give every boat the nearest oil grid not taken by an earlier boat
+	 * @param fleet
+	 * @param oilField
+	 */
+	void assign(Fleet fleet, OilField oilField) {
+		long startTime = System.nanoTime();
+		release(fleet, oilField);
+		int[] targets = fleet.target;
+		for (int i = 0; i < fleet.size(); i++) {
+			if (fleet.status[i] == Fleet.RETURNING)
+				continue; // no target until it is back from the depot
+			int boatX = fleet.x[i];
+			int boatY = fleet.y[i];
+			int cell = oilField.nearestFree(boatX, boatY);
+			targets[i] = cell;
+			if (cell == OilField.NONE) {
+				unassigned++;
+				continue;
+			}
+			int x = oilField.xOf(cell);
+			int y = oilField.yOf(cell);
+			oilField.reserve(x, y);
+			assignments++;
+			assignCost += Math.max(Math.abs(x - boatX), Math.abs(y - boatY));
+		}
+		assignNanos += System.nanoTime() - startTime;
+	}
+
+	/**
+	 * release the targets of all boats
+	 * @param fleet
+	 * @param oilField
+	 */
+	void release(Fleet fleet, OilField oilField) {
+		int[] targets = fleet.target;
+		for (int i = 0; i < fleet.size(); i++) {
+			int target = targets[i];
+			if (target != OilField.NONE && oilField != null)
+				oilField.release(oilField.xOf(target), oilField.yOf(target));
+			targets[i] = OilField.NONE;
+		}
+	}
+}
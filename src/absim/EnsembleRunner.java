@@ -0,0 +1,182 @@
+/*
+ * Copyright All rights reserved.
+ * File: EnsembleRunner.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs the same scenario many times (Monte-Carlo), on a bounded pool of threads.
+ * Every run is an isolated Simulation from the factory, driven by a SimulationEngine,
+ * with its own seed taken from one base seed, so the whole ensemble can be repeated.
+ * The runs can also start warm, as forks of one Checkpoint instead of a new start.
+ * The results are streamed to the caller as the runs finish, and aggregated in an EnsembleStats.
+ * @author Mon-Hong Shen
+ */
+public class EnsembleRunner {
+
+	private final Supplier<? extends Simulation> factory;
+	private final Checkpoint warmStart;
+	private final int threads;
+
+	/**
+	 * the result of one run
+	 */
+	public static final class Result {
+		private final int run;
+		private final long seed;
+		private final long ticks;
+		private final long cleanTick;
+		private final int boats;
+		private final long nanos;
+		private final Simulation simulation;
+
+		Result(int run, long seed, long ticks, long cleanTick, int boats, long nanos, Simulation simulation) {
+			this.run = run;
+			this.seed = seed;
+			this.ticks = ticks;
+			this.cleanTick = cleanTick;
+			this.boats = boats;
+			this.nanos = nanos;
+			this.simulation = simulation;
+		}
+
+		/**
+		 * @return the run number, from 1
+		 */
+		public int getRun() {
+			return run;
+		}
+
+		/**
+		 * @return the seed, to repeat this run alone
+		 */
+		public long getSeed() {
+			return seed;
+		}
+
+		public long getTicks() {
+			return ticks;
+		}
+
+		/**
+		 * @return the tick when the ocean became clean, or -1
+		 */
+		public long getCleanTick() {
+			return cleanTick;
+		}
+
+		public int getBoats() {
+			return boats;
+		}
+
+		/**
+		 * @return the wall time of the run
+		 */
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * @return the finished simulation
+		 */
+		public Simulation getSimulation() {
+			return simulation;
+		}
+	}
+
+	/**
+	 * @param factory a new (not started) simulation for every run, called from the pool threads
+	 * @param threads the runs executed at the same time
+	 */
+	public EnsembleRunner(Supplier<? extends Simulation> factory, int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("invalid threads: " + threads);
+		this.factory = factory;
+		this.warmStart = null;
+		this.threads = threads;
+	}
+
+	/**
+	 * @param warmStart every run continues a fork of this checkpoint, with its own seed
+	 * @param threads the runs executed at the same time
+	 */
+	public EnsembleRunner(Checkpoint warmStart, int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("invalid threads: " + threads);
+		this.factory = null;
+		this.warmStart = warmStart;
+		this.threads = threads;
+	}
+
+	/**
+	 * execute the runs, and wait until all are finished
+	 * @param runs the number of runs
+	 * @param baseSeed gives the seed of every run
+	 * @param maxTicks give up a run after maxTicks (after the checkpoint for warm starts)
+	 * @param onResult receives every result as soon as its run finishes, on the calling thread, may be null
+	 * @return the aggregated results
+	 */
+	public EnsembleStats run(int runs, long baseSeed, long maxTicks, Consumer<Result> onResult) {
+		SimRandom seeds = new SimRandom(baseSeed);
+		EnsembleStats stats = new EnsembleStats();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(runs, 1)));
+		try {
+			CompletionService<Result> done = new ExecutorCompletionService<>(pool);
+			for (int run = 1; run <= runs; run++) {
+				int number = run;
+				long seed = seeds.nextLong();
+				done.submit(() -> runOne(number, seed, maxTicks));
+			}
+			for (int i = 0; i < runs; i++) {
+				Result result = done.take().get();
+				stats.add(result.getCleanTick(), result.getBoats());
+				if (onResult != null)
+					onResult.accept(result);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("ensemble interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("ensemble run failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return stats;
+	}
+
+	private Result runOne(int run, long seed, long maxTicks) {
+		Simulation sim;
+		SimulationEngine engine;
+		if (warmStart != null) {
+			sim = warmStart.fork(seed);
+			engine = new SimulationEngine(sim);
+		} else {
+			sim = factory.get();
+			sim.setSeed(seed);
+			engine = new SimulationEngine(sim);
+			engine.start();
+		}
+
+		long startTime = System.nanoTime();
+		engine.runUntilClean(maxTicks);
+		long nanos = System.nanoTime() - startTime;
+		sim.setBoatParallelism(0); // release the threads of the run
+		sim.setEnvironmentParallelism(0);
+
+		long cleanTick = engine.isClean() ? engine.getTick() : -1;
+		int boats = (sim.getBoatList() == null) ? 0 : sim.getBoatList().size();
+		return new Result(run, seed, engine.getTick(), cleanTick, boats, nanos, sim);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright All rights reserved.
+ * File: EnsembleStats.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.util.Arrays;
+
+/**
+ * Aggregated results of an ensemble: time-to-clean and boats used of every run.
+ * The results are added one by one as the runs finish (see EnsembleRunner),
+ * runs not clean within the tick limit are only counted.
+ * Not thread-safe, the runner adds the results from one thread.
+ * @author Mon-Hong Shen
+ */
+public class EnsembleStats {
+
+	private int runs;
+	private int cleanRuns;
+	private long[] timeToClean = new long[16]; // of the clean runs
+	private long[] boatsUsed = new long[16];   // of every run
+	private boolean sorted = true;
+
+	/**
+	 * add the result of one run
+	 * @param cleanTick the tick when the ocean became clean, or -1
+	 * @param boats the boats used by the run
+	 */
+	public void add(long cleanTick, int boats) {
+		if (runs == boatsUsed.length)
+			boatsUsed = Arrays.copyOf(boatsUsed, runs * 2);
+		boatsUsed[runs++] = boats;
+		if (cleanTick >= 0) {
+			if (cleanRuns == timeToClean.length)
+				timeToClean = Arrays.copyOf(timeToClean, cleanRuns * 2);
+			timeToClean[cleanRuns++] = cleanTick;
+		}
+		sorted = false;
+	}
+
+	public int getRuns() {
+		return runs;
+	}
+
+	/**
+	 * @return the runs whose ocean became clean
+	 */
+	public int getCleanRuns() {
+		return cleanRuns;
+	}
+
+	/**
+	 * @return the mean time-to-clean in ticks of the clean runs, NaN if none
+	 */
+	public double getMeanTimeToClean() {
+		return mean(timeToClean, cleanRuns);
+	}
+
+	/**
+	 * @param p from 0 to 100, e.g. 50 = median
+	 * @return the time-to-clean percentile of the clean runs (nearest rank), -1 if none
+	 */
+	public long getTimeToCleanPercentile(double p) {
+		sort();
+		return percentile(timeToClean, cleanRuns, p);
+	}
+
+	/**
+	 * @return the mean boats used per run, NaN if no run
+	 */
+	public double getMeanBoatsUsed() {
+		return mean(boatsUsed, runs);
+	}
+
+	/**
+	 * @param p from 0 to 100
+	 * @return the boats used percentile (nearest rank), -1 if no run
+	 */
+	public long getBoatsUsedPercentile(double p) {
+		sort();
+		return percentile(boatsUsed, runs, p);
+	}
+
+	private void sort() {
+		if (sorted) return;
+		Arrays.sort(timeToClean, 0, cleanRuns);
+		Arrays.sort(boatsUsed, 0, runs);
+		sorted = true;
+	}
+
+	private static double mean(long[] values, int count) {
+		if (count == 0) return Double.NaN;
+		double sum = 0;
+		for (int i = 0; i < count; i++)
+			sum += values[i];
+		return sum / count;
+	}
+
+	private static long percentile(long[] sortedValues, int count, double p) {
+		if (p < 0 || p > 100)
+			throw new IllegalArgumentException("invalid percentile: " + p);
+		if (count == 0) return -1;
+		int rank = (int) Math.ceil(p / 100 * count);
+		return sortedValues[Math.max(rank, 1) - 1];
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright All rights reserved.
+ * File: EventBus.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Delivers events to subscribers asynchronously, every subscriber on its own executor.
+ * publish() never waits for a subscriber: each subscriber has a single slot
+ * holding the latest event, so the events published while a subscriber is
+ * still busy (or inside its rate limit) are coalesced and only the newest one is delivered.
+ * A subscriber receives its events one at a time, in publishing order.
+ * @author Mon-Hong Shen
+ * @param <T> the event, should be immutable
+ */
+public class EventBus<T> {
+
+	// delays the deliveries of rate limited subscribers, shared by every bus
+	private static ScheduledExecutorService timer;
+
+	private final CopyOnWriteArrayList<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+	/**
+	 * returned by subscribe()
+	 */
+	public interface Subscription {
+		/**
+		 * stop delivering events, an event already being delivered is finished
+		 */
+		void cancel();
+	}
+
+	/**
+	 * @param listener receives the events
+	 * @param executor runs the listener, e.g. SwingUtilities::invokeLater
+	 * @param minIntervalMillis at least this time between two deliveries, 0=no limit
+	 * @return the subscription, to cancel it
+	 */
+	public Subscription subscribe(Consumer<? super T> listener, Executor executor, long minIntervalMillis) {
+		if (minIntervalMillis < 0)
+			throw new IllegalArgumentException("invalid interval: " + minIntervalMillis);
+		Subscriber subscriber = new Subscriber(listener, executor, TimeUnit.MILLISECONDS.toNanos(minIntervalMillis));
+		subscribers.add(subscriber);
+		return () -> {
+			subscriber.cancelled = true;
+			subscribers.remove(subscriber);
+		};
+	}
+
+	/**
+	 * @return true if anyone listens
+	 */
+	public boolean hasSubscribers() {
+		return !subscribers.isEmpty();
+	}
+
+	/**
+	 * deliver the event to every subscriber, replacing their undelivered event
+	 * @param event
+	 */
+	public void publish(T event) {
+		for (Subscriber subscriber : subscribers)
+			subscriber.offer(event);
+	}
+
+	private static synchronized ScheduledExecutorService timer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "EventBus-timer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return timer;
+	}
+
+	private final class Subscriber {
+		private final Consumer<? super T> listener;
+		private final Executor executor;
+		private final long minIntervalNanos;
+		private final AtomicReference<T> latest = new AtomicReference<>();
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private final Runnable drain = this::drain;
+		private long lastDelivery; // only used by drain(), which never runs concurrently
+		private boolean delivered;
+		private volatile boolean cancelled;
+
+		Subscriber(Consumer<? super T> listener, Executor executor, long minIntervalNanos) {
+			this.listener = listener;
+			this.executor = executor;
+			this.minIntervalNanos = minIntervalNanos;
+		}
+
+		void offer(T event) {
+			latest.set(event);
+			if (scheduled.compareAndSet(false, true))
+				executor.execute(drain);
+		}
+
+		/**
+		 * deliver the latest event, or come back when the rate limit allows it
+		 */
+		private void drain() {
+			if (cancelled) return;
+
+			long wait = delivered ? lastDelivery + minIntervalNanos - System.nanoTime() : 0;
+			if (wait > 0) {
+				timer().schedule(() -> executor.execute(drain), wait, TimeUnit.NANOSECONDS);
+				return;
+			}
+			T event = latest.getAndSet(null);
+			try {
+				if (event != null) {
+					lastDelivery = System.nanoTime();
+					delivered = true;
+					listener.accept(event);
+				}
+			} finally {
+				// an event published meanwhile didn't schedule a drain, so do it here
+				scheduled.set(false);
+				if (latest.get() != null && scheduled.compareAndSet(false, true))
+					executor.execute(drain);
+			}
+		}
+	}
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright All rights reserved.
+ * File: Fleet.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import absim.ABRule.CleanMode;
+
+/**
+ * All boats of a simulation, stored as parallel primitive arrays (struct of arrays):
+ * boat i is x[i], y[i], battUsg[i], ... in the order the boats were added.
+ * The ABRule behaviors run over index ranges, so a phase walks each array sequentially
+ * instead of chasing one object per boat, and a fleet of 100k boats is a dozen arrays.
+ * asList() shows the boats as Boat flyweights for the UI and the existing callers.
+ *
+ * Without depots a boat recharges and unloads in place (the original rules).
+ * With depots a boat travels to the nearest depot when its load is full, or when its battery
+ * would not last from its next step to a depot, and recharges and unloads when arriving.
+ * In GRADIENT mode a boat steps to the neighbor nearest to oil in the simulation's distance field,
+ * and searches the nearest oil like NEAREST when it is beyond the field.
+ * @author Mon-Hong Shen
+ */
+public final class Fleet implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	static final int MAX_LOAD = 100;
+	static final int MIN_LOAD = 0;
+	static final int MAX_BATT = 500;
+	static final int MIN_BATT = 0;
+	static final int BOAT_BYTES = 4*8 + 8 + 3; // see writeTo()
+
+	// status
+	static final byte MOVING = 0;
+	static final byte STOP = 1;
+	static final byte CHARGING = 2;
+	static final byte CLEAN_LOADS = 3;
+	static final byte RETURNING = 4; // to a depot
+	private static final String[] STATUS_NAMES = { "MOVING", "STOP", "CHARGING", "CLEAN_LOADS", "RETURNING" };
+	private static final CleanMode[] CLEAN_MODES = CleanMode.values();
+
+	private int size;
+	int[] number = new int[0];       // unique in its simulation
+	byte[] status = new byte[0];
+	int[] x = new int[0];
+	int[] y = new int[0];
+	double[] direction = new double[0]; // degrees relative to North
+	boolean[] speed = new boolean[0];   // true=moving, false=stop
+	int[] loadCap = new int[0];  // loading capacity (kg)
+	int[] loadUsg = new int[0];  // usage of load (kg)
+	int[] battCap = new int[0];  // battery capacity
+	int[] battUsg = new int[0];  // usage of battery
+	byte[] cleanMode = new byte[0];
+	int[] target = new int[0];   // assigned oil grid (DISPATCHED mode)
+
+	private final List<Boat> boats = new BoatList();
+	private DepotMap depots; // null=recharge and unload in place
+	private OilDistanceField oilDistance; // GRADIENT mode, null=search the nearest oil
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the boats as flyweights, a boat shows the fleet at its index until the fleet is cleared
+	 */
+	public List<Boat> asList() {
+		return boats;
+	}
+
+	/**
+	 * @param depots where the boats recharge and unload, null=in place
+	 */
+	void setDepots(DepotMap depots) {
+		this.depots = depots;
+	}
+
+	/**
+	 * @param oilDistance descended by the boats in GRADIENT mode, null=search the nearest oil
+	 */
+	void setOilDistance(OilDistanceField oilDistance) {
+		this.oilDistance = oilDistance;
+	}
+
+	/**
+	 * new a boat at (x, y), stopped, with empty load and full battery
+	 * @param number unique in its simulation
+	 * @return its index
+	 */
+	int add(int number, int x, int y, CleanMode cleanMode) {
+		if (size == this.x.length)
+			grow(Math.max(8, size * 2));
+		int i = size++;
+		this.number[i] = number;
+		this.status[i] = STOP;
+		this.x[i] = x;
+		this.y[i] = y;
+		this.direction[i] = 270;   // default=Northwest
+		this.speed[i] = true;      // default=true(start to working)
+		this.loadCap[i] = MAX_LOAD;
+		this.loadUsg[i] = MIN_LOAD;
+		this.battCap[i] = MAX_BATT;
+		this.battUsg[i] = MIN_BATT;
+		this.cleanMode[i] = (byte) cleanMode.ordinal();
+		this.target[i] = OilField.NONE;
+		return i;
+	}
+
+	/**
+	 * remove all boats
+	 */
+	void clear() {
+		size = 0;
+	}
+
+	private void grow(int capacity) {
+		number = Arrays.copyOf(number, capacity);
+		status = Arrays.copyOf(status, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		direction = Arrays.copyOf(direction, capacity);
+		speed = Arrays.copyOf(speed, capacity);
+		loadCap = Arrays.copyOf(loadCap, capacity);
+		loadUsg = Arrays.copyOf(loadUsg, capacity);
+		battCap = Arrays.copyOf(battCap, capacity);
+		battUsg = Arrays.copyOf(battUsg, capacity);
+		cleanMode = Arrays.copyOf(cleanMode, capacity);
+		target = Arrays.copyOf(target, capacity);
+	}
+
+	static String nameOf(int number) {
+		return "Boat_b" + number;
+	}
+
+	static String statusName(byte status) {
+		return STATUS_NAMES[status];
+	}
+
+	/**
+	 * @return the boats having the status
+	 */
+	int count(byte status) {
+		int count = 0;
+		for (int i = 0; i < size; i++)
+			if (this.status[i] == status) count++;
+		return count;
+	}
+
+	CleanMode getCleanMode(int i) {
+		return CLEAN_MODES[cleanMode[i]];
+	}
+
+	void setCleanMode(int from, int to, CleanMode cleanMode) {
+		Arrays.fill(this.cleanMode, from, to, (byte) cleanMode.ordinal());
+	}
+
+	void forceStop(int from, int to) {
+		for (int i = from; i < to; i++)
+			stop(i);
+	}
+
+	/**
+	 * every boat from 'from' to 'to' (exclusive) in index order
+	 * moves to its next oil grid and cleans it when arriving
+	 */
+	void clean(int from, int to, OilField oilField) {
+		for (int i = from; i < to; i++) {
+			int cell = claimNext(i, oilField);
+			if (cell != OilField.NONE)
+				oilField.remove(oilField.xOf(cell), oilField.yOf(cell));
+		}
+	}
+
+	/**
+	 * every boat from 'from' to 'to' (exclusive) moves and claims its next oil grid,
+	 * the claimed grids are removed by the caller, so ranges can move concurrently.
+	 * @param claimed receives the claimed cell of every boat, or OilField.NONE, by index
+	 */
+	void claimNext(int from, int to, OilField oilField, int[] claimed) {
+		for (int i = from; i < to; i++)
+			claimed[i] = claimNext(i, oilField);
+	}
+
+	/**
+	 * move to the next unclaimed Oil Grid (by cleanMode), and claim it when arriving.
+	 * @return the claimed cell, or OilField.NONE
+	 */
+	int claimNext(int i, OilField oilField) {
+		if (oilField == null) return OilField.NONE;
+		if (status[i] == RETURNING && depots != null) {
+			returnToDepot(i);
+			return OilField.NONE;
+		}
+
+		int nextGrid;
+		switch (CLEAN_MODES[cleanMode[i]]) {
+			case NEAREST:    nextGrid = oilField.nearestUnclaimed(x[i], y[i]); break;
+			case DISPATCHED: nextGrid = target[i]; break;
+			case GRADIENT:   nextGrid = descend(i, oilField); break;
+			default:         nextGrid = oilField.firstUnclaimed();
+		}
+		if (nextGrid == OilField.NONE) return OilField.NONE;
+
+		int extraLoadUsg = 1;
+		if (loadCap[i] - loadUsg[i] < extraLoadUsg) {
+			if (depots != null) returnToDepot(i);
+			else cleanLoads(i);
+			return OilField.NONE;
+		}
+
+		int gridX = oilField.xOf(nextGrid);
+		int gridY = oilField.yOf(nextGrid);
+		// go back while a depot is still in reach from the next step
+		if (depots != null && (x[i] != gridX || y[i] != gridY)) {
+			int nextX = x[i] + Integer.signum(gridX - x[i]);
+			int nextY = y[i] + Integer.signum(gridY - y[i]);
+			if (battCap[i] - battUsg[i] - 1 < depots.distance(nextX, nextY)) {
+				returnToDepot(i);
+				return OilField.NONE;
+			}
+		}
+		moveTo(i, gridX, gridY);
+
+		if (x[i] == gridX && y[i] == gridY && oilField.claim(gridX, gridY)) {
+			loadUsg[i] += extraLoadUsg;
+			target[i] = OilField.NONE;
+			return nextGrid;
+		}
+		return OilField.NONE;
+	}
+
+	/**
+	 * @return the neighbor of boat i one move nearer to oil, or the nearest unclaimed oil if beyond the field
+	 */
+	private int descend(int i, OilField oilField) {
+		OilDistanceField field = oilDistance;
+		if (field != null && field.getOilField() == oilField) {
+			int next = field.descend(x[i], y[i]);
+			if (next != OilField.NONE) return next;
+		}
+		return oilField.nearestUnclaimed(x[i], y[i]);
+	}
+
+	/**
+	 * move boat i one grid to the destination:
+	 * every step consumes one battery.
+	 */
+	void moveTo(int i, int toX, int toY) {
+		if (x[i] == toX && y[i] == toY) {
+			stop(i);
+			return;
+		}
+
+		int step = 1;
+		if (battCap[i] - battUsg[i] < step) {
+			charging(i);
+			return;
+		}
+
+		start(i);
+
+		setDirection(i, toX, toY);
+
+		if (toX > x[i]) x[i] += step;
+		else if (toX < x[i]) x[i] -= step;
+
+		if (toY > y[i]) y[i] += step;
+		else if (toY < y[i]) y[i] -= step;
+
+		battUsg[i] += 1;
+	}
+
+	/**
+	 * move boat i one grid to the nearest depot,
+	 * or recharge and unload it if it is there.
+	 * The battery always lasts: Simulation only accepts depots within MAX_BATT of every grid,
+	 * and claimNext() turns back while the nearest depot is still in reach.
+	 */
+	private void returnToDepot(int i) {
+		int depot = depots.nearest(x[i], y[i]);
+		int depotX = depots.getX(depot);
+		int depotY = depots.getY(depot);
+		if (x[i] == depotX && y[i] == depotY) {
+			if (loadCap[i] - loadUsg[i] < 1) cleanLoads(i);
+			else charging(i);
+			battUsg[i] = MIN_BATT;
+			loadUsg[i] = MIN_LOAD;
+			return;
+		}
+		moveTo(i, depotX, depotY);
+		if (status[i] == MOVING)
+			status[i] = RETURNING;
+	}
+
+	/**
+	 * restart boat i from (x, y), with empty load and full battery
+	 */
+	void restart(int i, int x, int y) {
+		this.x[i] = x;
+		this.y[i] = y;
+		this.direction[i] = 270;
+		this.battUsg[i] = 0;
+		this.loadUsg[i] = 0;
+		start(i);
+	}
+
+	/**
+	 * 0=North, 90=East, 180=South, 270=West
+	 * 45=Northeast, 135=Southeast, 225=Southwest, 315=Northwest
+	 */
+	private void setDirection(int i, int toX, int toY) {
+		int diffX = toX - x[i];
+		int diffY = toY - y[i];
+
+		if (diffX==0 && diffY<0) direction[i] = 0;
+		else if (diffX>0 && diffY==0) direction[i] = 90;
+		else if (diffX==0 && diffY>0) direction[i] = 180;
+		else if (diffX<0 && diffY==0) direction[i] = 270;
+		else if (diffX>0 && diffY<0) direction[i] = 45;
+		else if (diffX>0 && diffY>0) direction[i] = 135;
+		else if (diffX<0 && diffY>0) direction[i] = 225;
+		else if (diffX<0 && diffY<0) direction[i] = 315;
+	}
+
+	private void charging(int i) {
+		speed[i] = false;
+		status[i] = CHARGING;
+		battUsg[i] = MIN_BATT;
+	}
+
+	private void cleanLoads(int i) {
+		speed[i] = false;
+		status[i] = CLEAN_LOADS;
+		loadUsg[i] = MIN_LOAD; // clean loads
+	}
+
+	private void stop(int i) {
+		speed[i] = false;
+		status[i] = STOP;
+	}
+
+	private void start(int i) {
+		speed[i] = true;
+		status[i] = MOVING;
+	}
+
+	/**
+	 * write boat i into a checkpoint, BOAT_BYTES bytes
+	 */
+	void writeTo(int i, ByteBuffer out) {
+		out.putInt(number[i]);
+		out.put(status[i]);
+		out.putInt(x[i]);
+		out.putInt(y[i]);
+		out.putDouble(direction[i]);
+		out.put((byte) (speed[i] ? 1 : 0));
+		out.putInt(loadCap[i]);
+		out.putInt(loadUsg[i]);
+		out.putInt(battCap[i]);
+		out.putInt(battUsg[i]);
+		out.put(cleanMode[i]);
+		out.putInt(target[i]);
+	}
+
+	/**
+	 * add a boat written by writeTo()
+	 * @return its index
+	 */
+	int readFrom(ByteBuffer in) {
+		int i = add(in.getInt(), 0, 0, CleanMode.OLDEST);
+		status[i] = in.get();
+		x[i] = in.getInt();
+		y[i] = in.getInt();
+		direction[i] = in.getDouble();
+		speed[i] = in.get() != 0;
+		loadCap[i] = in.getInt();
+		loadUsg[i] = in.getInt();
+		battCap[i] = in.getInt();
+		battUsg[i] = in.getInt();
+		cleanMode[i] = in.get();
+		target[i] = in.getInt();
+		return i;
+	}
+
+	/**
+	 * the boats as flyweights, created on demand
+	 */
+	private final class BoatList extends AbstractList<Boat> implements RandomAccess, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Boat get(int index) {
+			if (index < 0 || index >= size)
+				throw new IndexOutOfBoundsException("boat " + index + " of " + size);
+			return new Boat(Fleet.this, index);
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
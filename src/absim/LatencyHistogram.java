@@ -0,0 +1,107 @@
+/*
+ * Copyright All rights reserved.
+ * File: LatencyHistogram.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latencies in nanoseconds, counted in log-linear buckets:
+ * every power of two is split into 8 buckets, so a percentile is within 12.5% of the exact value.
+ * Recording is a few atomic increments without allocation, and can be read from any thread.
+ * @author Mon-Hong Shen
+ */
+public final class LatencyHistogram {
+
+	private static final int SUB_BITS = 3;
+	private static final int SUB = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param nanos negative values count as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) nanos = 0;
+		counts.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		long m;
+		while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos));
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the largest value, exact
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return the mean, exact, NaN if empty
+	 */
+	public double getMean() {
+		long n = count.get();
+		return (n == 0) ? Double.NaN : (double) sum.get() / n;
+	}
+
+	/**
+	 * @param p from 0 to 100, e.g. 50 = median
+	 * @return the upper bound of the bucket holding the percentile (nearest rank), 0 if empty
+	 */
+	public long getPercentile(double p) {
+		if (p < 0 || p > 100)
+			throw new IllegalArgumentException("invalid percentile: " + p);
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			total += counts.get(i);
+		if (total == 0) return 0;
+		long rank = Math.max((long) Math.ceil(p / 100 * total), 1);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(upperBoundOf(i), max.get());
+		}
+		return max.get(); // recorded while counting
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * the values below SUB have their own bucket, then SUB buckets per power of two
+	 */
+	static int bucketOf(long value) {
+		if (value < SUB) return (int) value;
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB - 1);
+		return (exp - SUB_BITS + 1) * SUB + sub;
+	}
+
+	static long upperBoundOf(int bucket) {
+		if (bucket < SUB) return bucket;
+		int shift = bucket / SUB - 1;
+		long lower = (long) (SUB + bucket % SUB) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
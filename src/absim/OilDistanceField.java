@@ -0,0 +1,317 @@
+/*
+ * Copyright All rights reserved.
+ * File: OilDistanceField.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.util.Arrays;
+
+/**
+ * The distance from every grid to the nearest oil grid, in boat moves (8 directions),
+ * so a boat finds its next step by looking at its 8 neighbors only: descend().
+ * Distances above MAX_DISTANCE aren't kept, a boat that far falls back to a nearest search.
+ *
+ * The field is built once by a multi-source BFS from every oil grid, then the oil field reports
+ * its changes and update() repairs only the grids whose distance changed, once per tick:
+ * a removed oil grid first invalidates the grids which lost every neighbor one move nearer to oil,
+ * level by level, then one BFS wave from the new oil grids and from the border of the invalidated
+ * grids sets the new distances.
+ * Stored like the oil field, in CHUNK x CHUNK chunks only allocated near oil.
+ * Read-only between two updates, so boats can descend it concurrently.
+ * @author Mon-Hong Shen
+ */
+public final class OilDistanceField {
+
+	public static final int MAX_DISTANCE = 254;
+	public static final int FAR = MAX_DISTANCE + 1; // farther than MAX_DISTANCE, not stored
+	private static final int CHUNK_SHIFT = OilField.CHUNK_SHIFT;
+	private static final int CHUNK = OilField.CHUNK;
+	private static final int CHUNK_MASK = CHUNK - 1;
+	// the neighbors in the order descent() tries them: straight moves, then diagonal moves
+	private static final int[] NEIGHBOR_X = { 0, 1, 0, -1, 1, 1, -1, -1 };
+	private static final int[] NEIGHBOR_Y = { -1, 0, 1, 0, -1, 1, 1, -1 };
+
+	private final OilField oilField;
+	private final int width;
+	private final int height;
+	private final int chunksX;
+	private final Chunk[] chunks; // null if every grid of the chunk is FAR
+
+	// oil changes since the last update()
+	private int[] added = new int[16];
+	private int addedCount;
+	private int[] removed = new int[16];
+	private int removedCount;
+	private boolean cleared;
+
+	// bucket queue by distance, reused by every update
+	private final int[][] buckets = new int[FAR][];
+	private final int[] bucketSize = new int[FAR];
+	// grids invalidated by the removed oil
+	private int[] raised = new int[16];
+	private int raisedCount;
+
+	/**
+	 * one distance per grid, unsigned byte
+	 */
+	private static final class Chunk {
+		final byte[] distance = new byte[CHUNK*CHUNK];
+		int reached; // grids nearer than FAR
+
+		Chunk() {
+			Arrays.fill(distance, (byte) FAR);
+		}
+	}
+
+	/**
+	 * build the field of the current oil, then follow the changes of the oil field
+	 * @param oilField
+	 */
+	public OilDistanceField(OilField oilField) {
+		this.oilField = oilField;
+		this.width = oilField.getWidth();
+		this.height = oilField.getHeight();
+		this.chunksX = (width + CHUNK_MASK) >>> CHUNK_SHIFT;
+		int chunksY = (height + CHUNK_MASK) >>> CHUNK_SHIFT;
+		this.chunks = new Chunk[chunksX * chunksY];
+		for (int i = 0; i < FAR; i++)
+			buckets[i] = new int[16];
+		oilField.addListener(follower);
+		build();
+	}
+
+	public OilField getOilField() {
+		return oilField;
+	}
+
+	/**
+	 * stop following the oil field
+	 */
+	public void detach() {
+		oilField.removeListener(follower);
+	}
+
+	/**
+	 * @return the moves from (x, y) to the nearest oil grid, FAR if farther than MAX_DISTANCE.
+	 *         up to date with the oil of the last update().
+	 */
+	public int distance(int x, int y) {
+		Chunk c = chunks[chunkOf(x, y)];
+		return (c == null) ? FAR : c.distance[localOf(x, y)] & 0xFF;
+	}
+
+	/**
+	 * the next step of a boat at (x, y) towards the nearest oil grid
+	 * @return the neighbor one move nearer to oil, (x, y) itself if it is oil, or OilField.NONE if FAR
+	 */
+	public int descend(int x, int y) {
+		int d = distance(x, y);
+		if (d == 0) return oilField.cellOf(x, y);
+		if (d == FAR) return OilField.NONE;
+		for (int k = 0; k < 8; k++) {
+			int nx = x + NEIGHBOR_X[k];
+			int ny = y + NEIGHBOR_Y[k];
+			if (nx >= 0 && ny >= 0 && nx < width && ny < height && distance(nx, ny) == d-1)
+				return oilField.cellOf(nx, ny);
+		}
+		return OilField.NONE; // not reached, a grid at distance d has a neighbor at d-1
+	}
+
+	/**
+	 * @return the chunks holding distances, for memory accounting
+	 */
+	public int chunkCount() {
+		int count = 0;
+		for (Chunk c : chunks)
+			if (c != null) count++;
+		return count;
+	}
+
+	// queues the changes of the oil field for the next update()
+	private final OilField.Listener follower = new OilField.Listener() {
+		@Override
+		public void added(int cell) {
+			if (addedCount == added.length)
+				added = Arrays.copyOf(added, addedCount * 2);
+			added[addedCount++] = cell;
+		}
+
+		@Override
+		public void removed(int cell) {
+			if (removedCount == removed.length)
+				removed = Arrays.copyOf(removed, removedCount * 2);
+			removed[removedCount++] = cell;
+		}
+
+		@Override
+		public void cleared() {
+			cleared = true;
+		}
+	};
+
+	/**
+	 * repair the distances changed by the oil added and removed since the last update
+	 */
+	public void update() {
+		if (cleared) {
+			Arrays.fill(chunks, null);
+			addedCount = 0;
+			removedCount = 0;
+			cleared = false;
+			build();
+			return;
+		}
+		if (addedCount == 0 && removedCount == 0) return;
+
+		raise();
+		for (int i = 0; i < addedCount; i++) {
+			int cell = added[i];
+			int x = oilField.xOf(cell);
+			int y = oilField.yOf(cell);
+			if (oilField.contains(x, y) && distance(x, y) != 0) {
+				setDistance(x, y, 0);
+				push(0, cell);
+			}
+		}
+		addedCount = 0;
+		lower(0);
+
+		// the chunks left without a distance
+		for (int i = 0; i < raisedCount; i++) {
+			int cell = raised[i];
+			int chunk = chunkOf(oilField.xOf(cell), oilField.yOf(cell));
+			if (chunks[chunk] != null && chunks[chunk].reached == 0)
+				chunks[chunk] = null;
+		}
+		raisedCount = 0;
+	}
+
+	/**
+	 * multi-source BFS from every oil grid
+	 */
+	private void build() {
+		for (int cell = oilField.first(); cell != OilField.NONE; cell = oilField.next(cell)) {
+			setDistance(oilField.xOf(cell), oilField.yOf(cell), 0);
+			push(0, cell);
+		}
+		lower(0);
+	}
+
+	/**
+	 * invalidate, level by level from the removed oil, every grid left without a neighbor one move
+	 * nearer to oil, then give each of them the distance through its valid neighbors, if any
+	 */
+	private void raise() {
+		for (int i = 0; i < removedCount; i++) {
+			int cell = removed[i];
+			push(0, cell);
+		}
+		removedCount = 0;
+
+		for (int d = 0; d < FAR; d++) {
+			for (int i = 0; i < bucketSize[d]; i++) {
+				int cell = buckets[d][i];
+				int x = oilField.xOf(cell);
+				int y = oilField.yOf(cell);
+				if (distance(x, y) != d) continue; // invalidated already
+				if (d == 0 ? oilField.contains(x, y) : hasNeighborAt(x, y, d-1)) continue;
+
+				setDistance(x, y, FAR);
+				if (raisedCount == raised.length)
+					raised = Arrays.copyOf(raised, raisedCount * 2);
+				raised[raisedCount++] = cell;
+				if (d == MAX_DISTANCE) continue;
+				for (int k = 0; k < 8; k++) {
+					int nx = x + NEIGHBOR_X[k];
+					int ny = y + NEIGHBOR_Y[k];
+					if (nx >= 0 && ny >= 0 && nx < width && ny < height && distance(nx, ny) == d+1)
+						push(d+1, oilField.cellOf(nx, ny));
+				}
+			}
+			bucketSize[d] = 0;
+		}
+
+		for (int i = 0; i < raisedCount; i++) {
+			int cell = raised[i];
+			int x = oilField.xOf(cell);
+			int y = oilField.yOf(cell);
+			int best = FAR;
+			for (int k = 0; k < 8; k++) {
+				int nx = x + NEIGHBOR_X[k];
+				int ny = y + NEIGHBOR_Y[k];
+				if (nx >= 0 && ny >= 0 && nx < width && ny < height)
+					best = Math.min(best, distance(nx, ny) + 1);
+			}
+			if (best <= MAX_DISTANCE && best < distance(x, y)) {
+				setDistance(x, y, best);
+				push(best, cell);
+			}
+		}
+	}
+
+	/**
+	 * BFS wave from the queued grids, in distance order, only lowering distances
+	 */
+	private void lower(int from) {
+		for (int d = from; d < FAR; d++) {
+			for (int i = 0; i < bucketSize[d]; i++) {
+				int cell = buckets[d][i];
+				int x = oilField.xOf(cell);
+				int y = oilField.yOf(cell);
+				if (distance(x, y) != d || d == MAX_DISTANCE) continue; // lowered since queued
+				for (int k = 0; k < 8; k++) {
+					int nx = x + NEIGHBOR_X[k];
+					int ny = y + NEIGHBOR_Y[k];
+					if (nx >= 0 && ny >= 0 && nx < width && ny < height && distance(nx, ny) > d+1) {
+						setDistance(nx, ny, d+1);
+						push(d+1, oilField.cellOf(nx, ny));
+					}
+				}
+			}
+			bucketSize[d] = 0;
+		}
+	}
+
+	private boolean hasNeighborAt(int x, int y, int d) {
+		for (int k = 0; k < 8; k++) {
+			int nx = x + NEIGHBOR_X[k];
+			int ny = y + NEIGHBOR_Y[k];
+			if (nx >= 0 && ny >= 0 && nx < width && ny < height && distance(nx, ny) == d)
+				return true;
+		}
+		return false;
+	}
+
+	private void push(int d, int cell) {
+		if (bucketSize[d] == buckets[d].length)
+			buckets[d] = Arrays.copyOf(buckets[d], bucketSize[d] * 2);
+		buckets[d][bucketSize[d]++] = cell;
+	}
+
+	private void setDistance(int x, int y, int d) {
+		int chunk = chunkOf(x, y);
+		Chunk c = chunks[chunk];
+		if (c == null) {
+			if (d == FAR) return;
+			c = new Chunk();
+			chunks[chunk] = c;
+		}
+		int local = localOf(x, y);
+		int old = c.distance[local] & 0xFF;
+		if (old == FAR && d != FAR) c.reached++;
+		else if (old != FAR && d == FAR) c.reached--;
+		c.distance[local] = (byte) d;
+	}
+
+	private int chunkOf(int x, int y) {
+		return (y >>> CHUNK_SHIFT) * chunksX + (x >>> CHUNK_SHIFT);
+	}
+
+	private static int localOf(int x, int y) {
+		return ((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK);
+	}
+}
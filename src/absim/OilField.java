@@ -0,0 +1,803 @@
+/*
+ * Copyright All rights reserved.
+ * File: OilField.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * The polluted grids of the ocean.
+ * Every grid is stored at most once, cell = y*width + x.
+ * The ocean is tiled into CHUNK x CHUNK chunks of primitive arrays,
+ * a chunk is only allocated while it holds oil, so an empty ocean costs no memory.
+ * add/remove/contains are O(1), the insertion order is kept by a linked list of cells,
+ * so first() is the oldest oil and last() is the newest oil.
+ * While boats clean concurrently, a grid is claimed atomically by exactly one boat,
+ * and only removed after all boats are done (see claim()).
+ * The chunks also work as a uniform bucket grid for the nearest and radius queries,
+ * the distance is the boat's moving distance max(|dx|,|dy|).
+ * The min/max x of every row and min/max y of every column are kept up to date,
+ * so the leading edge of the spill is known without scanning the oil.
+ * Oil ages lazily: darker() only counts the field's age, and the darkness level
+ * of a grid is derived from the age when it is queried (see OilShade).
+ * snapshot() freezes the field for other threads, a chunk is only copied
+ * when it changed since the previous snapshot.
+ * @author Mon-Hong Shen
+ */
+public class OilField {
+
+	public static final int NONE = -1;
+	public static final int CHUNK_SHIFT = 6;
+	public static final int CHUNK = 1 << CHUNK_SHIFT; // 64 x 64 grids
+	private static final int CHUNK_MASK = CHUNK - 1;
+
+	private final int width;
+	private final int height;
+	private final int chunksX;
+	private final int chunksY;
+	private final Chunk[] chunks;     // null if the chunk has no oil
+	private final int[] activeChunks; // the chunks having oil
+	private final int[] activePos;    // position in activeChunks, or NONE
+	private int activeCount;
+	private int head = NONE;
+	private int tail = NONE;
+	private int size;
+	private int age; // darker() steps so far
+	private long added;   // grids added so far
+	private long removed; // grids removed so far
+	// spill frontier
+	private final int[] rowCount;
+	private final int[] rowMinX;
+	private final int[] rowMaxX;
+	private final int[] colCount;
+	private final int[] colMinY;
+	private final int[] colMaxY;
+	private final long[] occupiedRows;
+	private final long[] occupiedCols;
+	private Listener[] listeners = new Listener[0];
+
+	/**
+	 * every chunk keeps one word per row, and the birth age and insertion order of its grids
+	 */
+	private static final class Chunk {
+		final long[] rows = new long[CHUNK];
+		final AtomicLongArray claims = new AtomicLongArray(CHUNK);
+		final long[] reserved = new long[CHUNK]; // targets given by the dispatcher
+		final int[] born = new int[CHUNK*CHUNK]; // age of the field when the grid had level 0
+		final int[] prev = new int[CHUNK*CHUNK];
+		final int[] next = new int[CHUNK*CHUNK];
+		int count;
+		OilSnapshot.Chunk frozen; // the last snapshot of the chunk, null if it changed since
+	}
+
+	public OilField(int width, int height) {
+		if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("invalid ocean size: " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+		this.chunksX = (width  + CHUNK_MASK) >>> CHUNK_SHIFT;
+		this.chunksY = (height + CHUNK_MASK) >>> CHUNK_SHIFT;
+		this.chunks = new Chunk[chunksX * chunksY];
+		this.activeChunks = new int[chunks.length];
+		this.activePos = new int[chunks.length];
+		Arrays.fill(activePos, NONE);
+		this.rowCount = new int[height];
+		this.rowMinX = new int[height];
+		this.rowMaxX = new int[height];
+		this.colCount = new int[width];
+		this.colMinY = new int[width];
+		this.colMaxY = new int[width];
+		this.occupiedRows = new long[(height + 63) >>> 6];
+		this.occupiedCols = new long[(width + 63) >>> 6];
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the grids added since the field was created
+	 */
+	public long getAddedCount() {
+		return added;
+	}
+
+	/**
+	 * @return the grids removed (cleaned or cleared) since the field was created
+	 */
+	public long getRemovedCount() {
+		return removed;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int cellOf(int x, int y) {
+		return y * width + x;
+	}
+
+	public int xOf(int cell) {
+		return cell % width;
+	}
+
+	public int yOf(int cell) {
+		return cell / width;
+	}
+
+	public boolean contains(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) return false;
+		Chunk c = chunks[chunkOf(x, y)];
+		return c != null && (c.rows[y & CHUNK_MASK] & (1L << x)) != 0;
+	}
+
+	/**
+	 * add an oil grid, ignored if the grid is already polluted
+	 * @param level darkness level of the new oil, 0=fresh oil
+	 * @return true if the grid is new
+	 */
+	public boolean add(int x, int y, int level) {
+		int chunk = chunkOf(x, y);
+		Chunk c = chunks[chunk];
+		if (c == null) {
+			c = new Chunk();
+			chunks[chunk] = c;
+			activePos[chunk] = activeCount;
+			activeChunks[activeCount++] = chunk;
+		}
+		else if ((c.rows[y & CHUNK_MASK] & (1L << x)) != 0) {
+			return false;
+		}
+
+		int cell = cellOf(x, y);
+		int local = localOf(x, y);
+		c.rows[y & CHUNK_MASK] |= 1L << x;
+		c.born[local] = age - level;
+		c.prev[local] = tail;
+		c.next[local] = NONE;
+		c.count++;
+		c.frozen = null;
+		if (tail == NONE) head = cell;
+		else setNext(tail, cell);
+		tail = cell;
+		size++;
+		added++;
+
+		if (rowCount[y]++ == 0) {
+			rowMinX[y] = rowMaxX[y] = x;
+			occupiedRows[y >>> 6] |= 1L << y;
+		}
+		else if (x < rowMinX[y]) rowMinX[y] = x;
+		else if (x > rowMaxX[y]) rowMaxX[y] = x;
+		if (colCount[x]++ == 0) {
+			colMinY[x] = colMaxY[x] = y;
+			occupiedCols[x >>> 6] |= 1L << x;
+		}
+		else if (y < colMinY[x]) colMinY[x] = y;
+		else if (y > colMaxY[x]) colMaxY[x] = y;
+		for (Listener listener : listeners)
+			listener.added(cell);
+		return true;
+	}
+
+	/**
+	 * remove an oil grid, its chunk is released when it has no oil anymore
+	 * @return true if the grid was polluted
+	 */
+	public boolean remove(int x, int y) {
+		if (!contains(x, y)) return false;
+
+		int chunk = chunkOf(x, y);
+		Chunk c = chunks[chunk];
+		int local = localOf(x, y);
+		int p = c.prev[local];
+		int n = c.next[local];
+		if (p == NONE) head = n;
+		else setNext(p, n);
+		if (n == NONE) tail = p;
+		else setPrev(n, p);
+		c.rows[y & CHUNK_MASK] &= ~(1L << x);
+		if ((c.claims.get(y & CHUNK_MASK) & (1L << x)) != 0)
+			c.claims.set(y & CHUNK_MASK, c.claims.get(y & CHUNK_MASK) & ~(1L << x));
+		c.reserved[y & CHUNK_MASK] &= ~(1L << x);
+		c.frozen = null;
+		size--;
+		removed++;
+
+		if (--rowCount[y] == 0) occupiedRows[y >>> 6] &= ~(1L << y);
+		else if (x == rowMinX[y]) rowMinX[y] = nextInRow(y, x+1);
+		else if (x == rowMaxX[y]) rowMaxX[y] = prevInRow(y, x-1);
+		if (--colCount[x] == 0) occupiedCols[x >>> 6] &= ~(1L << x);
+		else if (y == colMinY[x]) colMinY[x] = nextInColumn(x, y+1);
+		else if (y == colMaxY[x]) colMaxY[x] = prevInColumn(x, y-1);
+
+		if (--c.count == 0) {
+			chunks[chunk] = null;
+			int pos = activePos[chunk];
+			int moved = activeChunks[--activeCount];
+			activeChunks[pos] = moved;
+			activePos[moved] = pos;
+			activePos[chunk] = NONE;
+		}
+		for (Listener listener : listeners)
+			listener.removed(cellOf(x, y));
+		return true;
+	}
+
+	public void clear() {
+		for (int i = 0; i < activeCount; i++) {
+			chunks[activeChunks[i]] = null;
+			activePos[activeChunks[i]] = NONE;
+		}
+		activeCount = 0;
+		head = NONE;
+		tail = NONE;
+		removed += size;
+		size = 0;
+		Arrays.fill(rowCount, 0);
+		Arrays.fill(colCount, 0);
+		Arrays.fill(occupiedRows, 0L);
+		Arrays.fill(occupiedCols, 0L);
+		for (Listener listener : listeners)
+			listener.cleared();
+	}
+
+	/**
+	 * follows the changes of the field, called by the thread changing it
+	 */
+	interface Listener {
+		void added(int cell);
+		void removed(int cell);
+		void cleared(); // every grid removed
+	}
+
+	void addListener(Listener listener) {
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+	}
+
+	void removeListener(Listener listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			if (listeners[i] == listener) {
+				Listener[] rest = new Listener[listeners.length - 1];
+				System.arraycopy(listeners, 0, rest, 0, i);
+				System.arraycopy(listeners, i + 1, rest, i, rest.length - i);
+				listeners = rest;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return the first row having oil, from y on, or NONE
+	 */
+	public int nextOccupiedRow(int y) {
+		return nextSetBit(occupiedRows, y, height);
+	}
+
+	/**
+	 * @return the first column having oil, from x on, or NONE
+	 */
+	public int nextOccupiedColumn(int x) {
+		return nextSetBit(occupiedCols, x, width);
+	}
+
+	/**
+	 * @return the smallest x of the oil in row y (the row must have oil)
+	 */
+	public int rowMinX(int y) {
+		return rowMinX[y];
+	}
+
+	/**
+	 * @return the largest x of the oil in row y (the row must have oil)
+	 */
+	public int rowMaxX(int y) {
+		return rowMaxX[y];
+	}
+
+	/**
+	 * @return the smallest y of the oil in column x (the column must have oil)
+	 */
+	public int colMinY(int x) {
+		return colMinY[x];
+	}
+
+	/**
+	 * @return the largest y of the oil in column x (the column must have oil)
+	 */
+	public int colMaxY(int x) {
+		return colMaxY[x];
+	}
+
+	/**
+	 * @return the oldest cell, or NONE
+	 */
+	public int first() {
+		return head;
+	}
+
+	/**
+	 * @return the oldest cell not claimed by a boat, or NONE
+	 */
+	public int firstUnclaimed() {
+		int cell = head;
+		while (cell != NONE && isClaimed(xOf(cell), yOf(cell)))
+			cell = next(cell);
+		return cell;
+	}
+
+	/**
+	 * atomically claim a polluted grid, safe to call from many threads
+	 * as long as no grid is added or removed at the same time.
+	 * @return true if this call claimed the grid, false if it is clean or already claimed
+	 */
+	public boolean claim(int x, int y) {
+		if (!contains(x, y)) return false;
+		AtomicLongArray claims = chunks[chunkOf(x, y)].claims;
+		int ly = y & CHUNK_MASK;
+		long bit = 1L << x;
+		for (;;) {
+			long word = claims.get(ly);
+			if ((word & bit) != 0) return false;
+			if (claims.compareAndSet(ly, word, word | bit)) return true;
+		}
+	}
+
+	public boolean isClaimed(int x, int y) {
+		if (!contains(x, y)) return false;
+		return (chunks[chunkOf(x, y)].claims.get(y & CHUNK_MASK) & (1L << x)) != 0;
+	}
+
+	/**
+	 * reserve a polluted grid as the target of one boat
+	 * @return true if the grid was polluted and not reserved yet
+	 */
+	public boolean reserve(int x, int y) {
+		if (!contains(x, y) || isReserved(x, y)) return false;
+		chunks[chunkOf(x, y)].reserved[y & CHUNK_MASK] |= 1L << x;
+		return true;
+	}
+
+	public void release(int x, int y) {
+		if (!contains(x, y)) return;
+		chunks[chunkOf(x, y)].reserved[y & CHUNK_MASK] &= ~(1L << x);
+	}
+
+	public boolean isReserved(int x, int y) {
+		if (!contains(x, y)) return false;
+		return (chunks[chunkOf(x, y)].reserved[y & CHUNK_MASK] & (1L << x)) != 0;
+	}
+
+	/**
+	 * @return the newest cell, or NONE
+	 */
+	public int last() {
+		return tail;
+	}
+
+	/**
+	 * @return the next newer cell, or NONE
+	 */
+	public int next(int cell) {
+		int x = xOf(cell);
+		int y = yOf(cell);
+		return chunks[chunkOf(x, y)].next[localOf(x, y)];
+	}
+
+	/**
+	 * darker every existing oil grid by one level, O(1)
+	 */
+	public void darker() {
+		age++;
+	}
+
+	/**
+	 * @return darker() steps so far
+	 */
+	public int getAge() {
+		return age;
+	}
+
+	/**
+	 * an immutable copy of the oil grids and their levels, safe to read from any thread.
+	 * only the chunks changed since the previous snapshot are copied,
+	 * the others are shared with it.
+	 */
+	public OilSnapshot snapshot() {
+		OilSnapshot.Chunk[] frozen = new OilSnapshot.Chunk[activeCount];
+		for (int i = 0; i < activeCount; i++) {
+			int chunk = activeChunks[i];
+			Chunk c = chunks[chunk];
+			if (c.frozen == null) {
+				int originX = (chunk % chunksX) << CHUNK_SHIFT;
+				int originY = (chunk / chunksX) << CHUNK_SHIFT;
+				c.frozen = new OilSnapshot.Chunk(chunk, originX, originY, c.rows.clone(), c.born.clone());
+			}
+			frozen[i] = c.frozen;
+		}
+		return new OilSnapshot(width, height, size, age, frozen);
+	}
+
+	/**
+	 * @return the darkness level of an oil grid
+	 */
+	public int getLevel(int cell) {
+		int x = xOf(cell);
+		int y = yOf(cell);
+		return age - chunks[chunkOf(x, y)].born[localOf(x, y)];
+	}
+
+	public int getRGB(int cell) {
+		return OilShade.rgb(getLevel(cell));
+	}
+
+	/**
+	 * @return the number of chunks having oil
+	 */
+	public int activeChunkCount() {
+		return activeCount;
+	}
+
+	/**
+	 * @param i from 0 to activeChunkCount()-1
+	 * @return the chunk index
+	 */
+	public int activeChunk(int i) {
+		return activeChunks[i];
+	}
+
+	/**
+	 * @return the first cell of a chunk in row order, or NONE
+	 */
+	public int firstCell(int chunk) {
+		Chunk c = chunks[chunk];
+		if (c == null) return NONE;
+		int originX = (chunk % chunksX) << CHUNK_SHIFT;
+		int originY = (chunk / chunksX) << CHUNK_SHIFT;
+		return scan(c, originX, originY, 0, 0L);
+	}
+
+	/**
+	 * @return the next cell of the same chunk in row order, or NONE
+	 */
+	public int nextCell(int cell) {
+		int x = xOf(cell);
+		int y = yOf(cell);
+		Chunk c = chunks[chunkOf(x, y)];
+		int ly = y & CHUNK_MASK;
+		// mask off this grid and every grid before it in the row
+		long skip = (2L << (x & CHUNK_MASK)) - 1;
+		return scan(c, x & ~CHUNK_MASK, y & ~CHUNK_MASK, ly, skip);
+	}
+
+	/**
+	 * @return the bytes written by writeTo()
+	 */
+	long checkpointBytes() {
+		return 4*4 + 8L*size;
+	}
+
+	/**
+	 * write the field into a checkpoint: size, age, then every grid and its birth age, oldest first.
+	 * claims and reservations aren't written, they belong to a tick and to the boats.
+	 */
+	void writeTo(ByteBuffer out) {
+		out.putInt(width);
+		out.putInt(height);
+		out.putInt(age);
+		out.putInt(size);
+		for (int cell = head; cell != NONE; cell = next(cell)) {
+			int x = xOf(cell);
+			int y = yOf(cell);
+			out.putInt(cell);
+			out.putInt(chunks[chunkOf(x, y)].born[localOf(x, y)]);
+		}
+	}
+
+	/**
+	 * read a field written by writeTo(), in the same insertion order
+	 */
+	static OilField readFrom(ByteBuffer in) {
+		OilField field = new OilField(in.getInt(), in.getInt());
+		field.age = in.getInt();
+		int size = in.getInt();
+		for (int i = 0; i < size; i++) {
+			int cell = in.getInt();
+			int born = in.getInt();
+			field.add(field.xOf(cell), field.yOf(cell), field.age - born);
+		}
+		return field;
+	}
+
+	/**
+	 * find the nearest oil grid not claimed by a boat.
+	 * the chunks are searched ring by ring around (x,y) and the search stops
+	 * when the next ring can't be nearer, so the cost doesn't grow with the oil size.
+	 * safe to call from many threads while boats are claiming.
+	 * @return the nearest cell, or NONE
+	 */
+	public int nearestUnclaimed(int x, int y) {
+		return nearest(x, y, false);
+	}
+
+	/**
+	 * find the nearest oil grid neither claimed nor reserved.
+	 * @return the nearest cell, or NONE
+	 */
+	public int nearestFree(int x, int y) {
+		return nearest(x, y, true);
+	}
+
+	private int nearest(int x, int y, boolean skipReserved) {
+		if (size == 0) return NONE;
+
+		int cx = Math.min(Math.max(x, 0) >>> CHUNK_SHIFT, chunksX-1);
+		int cy = Math.min(Math.max(y, 0) >>> CHUNK_SHIFT, chunksY-1);
+		int maxRing = Math.max(Math.max(cx, chunksX-1-cx), Math.max(cy, chunksY-1-cy));
+		long best = Long.MAX_VALUE; // distance << 32 | cell
+		int visited = 0;
+		for (int k = 0; k <= maxRing; k++) {
+			int lowerBound = (k == 0) ? 0 : (k-1) * CHUNK + 1;
+			if (lowerBound >= distanceOf(best)) break;
+
+			int ringChunks = (k == 0) ? 1 : 8*k;
+			if (visited + ringChunks > activeCount) // cheaper to visit every chunk having oil
+				return cellOfBest(nearestOfActive(x, y, skipReserved, best));
+			visited += ringChunks;
+
+			for (int i = cx-k; i <= cx+k; i++) {
+				best = nearestOfChunk(i, cy-k, x, y, skipReserved, best);
+				if (k > 0) best = nearestOfChunk(i, cy+k, x, y, skipReserved, best);
+			}
+			for (int j = cy-k+1; j <= cy+k-1; j++) {
+				best = nearestOfChunk(cx-k, j, x, y, skipReserved, best);
+				best = nearestOfChunk(cx+k, j, x, y, skipReserved, best);
+			}
+		}
+		return cellOfBest(best);
+	}
+
+	/**
+	 * visit every oil grid within distance r of (x,y)
+	 * @param x
+	 * @param y
+	 * @param r
+	 * @param action receives the cell
+	 */
+	public void forEachInRadius(int x, int y, int r, IntConsumer action) {
+		int x0 = Math.max(x-r, 0), x1 = Math.min(x+r, width-1);
+		int y0 = Math.max(y-r, 0), y1 = Math.min(y+r, height-1);
+		for (int cy = y0 >>> CHUNK_SHIFT; cy <= y1 >>> CHUNK_SHIFT; cy++) {
+			for (int cx = x0 >>> CHUNK_SHIFT; cx <= x1 >>> CHUNK_SHIFT; cx++) {
+				Chunk c = chunks[cy * chunksX + cx];
+				if (c == null) continue;
+				int ox = cx << CHUNK_SHIFT;
+				int oy = cy << CHUNK_SHIFT;
+				long mask = rangeMask(Math.max(x0, ox) - ox, Math.min(x1, ox+CHUNK_MASK) - ox);
+				for (int gy = Math.max(y0, oy); gy <= Math.min(y1, oy+CHUNK_MASK); gy++) {
+					for (long row = c.rows[gy - oy] & mask; row != 0; row &= row-1)
+						action.accept(cellOf(ox + Long.numberOfTrailingZeros(row), gy));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of oil grids within distance r of (x,y)
+	 */
+	public int countInRadius(int x, int y, int r) {
+		int count = 0;
+		int x0 = Math.max(x-r, 0), x1 = Math.min(x+r, width-1);
+		int y0 = Math.max(y-r, 0), y1 = Math.min(y+r, height-1);
+		for (int cy = y0 >>> CHUNK_SHIFT; cy <= y1 >>> CHUNK_SHIFT; cy++) {
+			for (int cx = x0 >>> CHUNK_SHIFT; cx <= x1 >>> CHUNK_SHIFT; cx++) {
+				Chunk c = chunks[cy * chunksX + cx];
+				if (c == null) continue;
+				int ox = cx << CHUNK_SHIFT;
+				int oy = cy << CHUNK_SHIFT;
+				long mask = rangeMask(Math.max(x0, ox) - ox, Math.min(x1, ox+CHUNK_MASK) - ox);
+				for (int gy = Math.max(y0, oy); gy <= Math.min(y1, oy+CHUNK_MASK); gy++)
+					count += Long.bitCount(c.rows[gy - oy] & mask);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * nearest search over every chunk having oil, chunks farther than best are skipped
+	 */
+	private long nearestOfActive(int x, int y, boolean skipReserved, long best) {
+		for (int i = 0; i < activeCount; i++) {
+			int chunk = activeChunks[i];
+			best = nearestOfChunk(chunk % chunksX, chunk / chunksX, x, y, skipReserved, best);
+		}
+		return best;
+	}
+
+	/**
+	 * @return the nearer of best and the nearest unclaimed (and unreserved) grid of chunk (cx,cy)
+	 */
+	private long nearestOfChunk(int cx, int cy, int x, int y, boolean skipReserved, long best) {
+		if (cx < 0 || cy < 0 || cx >= chunksX || cy >= chunksY) return best;
+		Chunk c = chunks[cy * chunksX + cx];
+		if (c == null) return best;
+
+		int ox = cx << CHUNK_SHIFT;
+		int oy = cy << CHUNK_SHIFT;
+		int bestDist = distanceOf(best);
+		if (Math.max(gap(x, ox), gap(y, oy)) >= bestDist) return best;
+
+		int t = x - ox; // x relative to the chunk
+		for (int ly = 0; ly < CHUNK; ly++) {
+			int dy = Math.abs(y - (oy + ly));
+			if (dy >= bestDist) continue;
+			long row = c.rows[ly] & ~c.claims.get(ly);
+			if (skipReserved) row &= ~c.reserved[ly];
+			if (row == 0) continue;
+
+			int lx;
+			if (t < 0) {
+				lx = Long.numberOfTrailingZeros(row);
+			} else if (t > CHUNK_MASK) {
+				lx = CHUNK_MASK - Long.numberOfLeadingZeros(row);
+			} else {
+				long high = row & (-1L << t);      // grids at or after x
+				long low  = row & ~(-1L << t);     // grids before x
+				int hx = (high != 0) ? Long.numberOfTrailingZeros(high) : Integer.MAX_VALUE;
+				int lowX = (low != 0) ? CHUNK_MASK - Long.numberOfLeadingZeros(low) : Integer.MIN_VALUE;
+				lx = ((long) hx - t <= (long) t - lowX) ? hx : lowX;
+			}
+			int d = Math.max(Math.abs(t - lx), dy);
+			if (d < bestDist) {
+				bestDist = d;
+				best = ((long) d << 32) | cellOf(ox + lx, oy + ly);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return distance from v to the chunk range [origin, origin+CHUNK)
+	 */
+	private static int gap(int v, int origin) {
+		if (v < origin) return origin - v;
+		if (v > origin + CHUNK_MASK) return v - origin - CHUNK_MASK;
+		return 0;
+	}
+
+	private static int distanceOf(long best) {
+		return (best == Long.MAX_VALUE) ? Integer.MAX_VALUE : (int) (best >>> 32);
+	}
+
+	private static int cellOfBest(long best) {
+		return (best == Long.MAX_VALUE) ? NONE : (int) best;
+	}
+
+	/**
+	 * @return the bits from lo to hi (inclusive)
+	 */
+	private static long rangeMask(int lo, int hi) {
+		return (-1L << lo) & (-1L >>> (CHUNK_MASK - hi));
+	}
+
+	/**
+	 * @return the first oil of row y at or after x, the row must have one
+	 */
+	private int nextInRow(int y, int x) {
+		int ly = y & CHUNK_MASK;
+		int base = (y >>> CHUNK_SHIFT) * chunksX;
+		for (int cx = x >>> CHUNK_SHIFT; ; cx++, x = cx << CHUNK_SHIFT) {
+			Chunk c = chunks[base + cx];
+			if (c == null) continue;
+			long row = c.rows[ly] & (-1L << x);
+			if (row != 0) return (cx << CHUNK_SHIFT) + Long.numberOfTrailingZeros(row);
+		}
+	}
+
+	/**
+	 * @return the last oil of row y at or before x, the row must have one
+	 */
+	private int prevInRow(int y, int x) {
+		int ly = y & CHUNK_MASK;
+		int base = (y >>> CHUNK_SHIFT) * chunksX;
+		for (int cx = x >>> CHUNK_SHIFT; ; cx--, x = (cx << CHUNK_SHIFT) + CHUNK_MASK) {
+			Chunk c = chunks[base + cx];
+			if (c == null) continue;
+			long row = c.rows[ly] & (-1L >>> (CHUNK_MASK - (x & CHUNK_MASK)));
+			if (row != 0) return (cx << CHUNK_SHIFT) + CHUNK_MASK - Long.numberOfLeadingZeros(row);
+		}
+	}
+
+	/**
+	 * @return the first oil of column x at or after y, the column must have one
+	 */
+	private int nextInColumn(int x, int y) {
+		long bit = 1L << x;
+		for (;;) {
+			Chunk c = chunks[chunkOf(x, y)];
+			int end = y | CHUNK_MASK; // last row of the chunk
+			if (c == null) {
+				y = end + 1;
+				continue;
+			}
+			for (; y <= end; y++)
+				if ((c.rows[y & CHUNK_MASK] & bit) != 0) return y;
+		}
+	}
+
+	/**
+	 * @return the last oil of column x at or before y, the column must have one
+	 */
+	private int prevInColumn(int x, int y) {
+		long bit = 1L << x;
+		for (;;) {
+			Chunk c = chunks[chunkOf(x, y)];
+			int start = y & ~CHUNK_MASK; // first row of the chunk
+			if (c == null) {
+				y = start - 1;
+				continue;
+			}
+			for (; y >= start; y--)
+				if ((c.rows[y & CHUNK_MASK] & bit) != 0) return y;
+		}
+	}
+
+	/**
+	 * @return the first set bit from 'from', or NONE
+	 */
+	private static int nextSetBit(long[] bits, int from, int limit) {
+		if (from >= limit) return NONE;
+		int i = from >>> 6;
+		long word = bits[i] & (-1L << from);
+		while (word == 0) {
+			if (++i == bits.length) return NONE;
+			word = bits[i];
+		}
+		return (i << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	private int scan(Chunk c, int originX, int originY, int ly, long skip) {
+		for (long row = c.rows[ly] & ~skip; ; row = c.rows[ly]) {
+			if (row != 0)
+				return cellOf(originX + Long.numberOfTrailingZeros(row), originY + ly);
+			if (++ly == CHUNK) return NONE;
+		}
+	}
+
+	private int chunkOf(int x, int y) {
+		return (y >>> CHUNK_SHIFT) * chunksX + (x >>> CHUNK_SHIFT);
+	}
+
+	private static int localOf(int x, int y) {
+		return ((y & CHUNK_MASK) << CHUNK_SHIFT) | (x & CHUNK_MASK);
+	}
+
+	private void setNext(int cell, int next) {
+		int x = xOf(cell);
+		int y = yOf(cell);
+		chunks[chunkOf(x, y)].next[localOf(x, y)] = next;
+	}
+
+	private void setPrev(int cell, int prev) {
+		int x = xOf(cell);
+		int y = yOf(cell);
+		chunks[chunkOf(x, y)].prev[localOf(x, y)] = prev;
+	}
+}
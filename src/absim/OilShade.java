@@ -0,0 +1,53 @@
+/*
+ * Copyright All rights reserved.
+ * File: OilShade.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.awt.Color;
+
+/**
+ * The color of oil by its darkness level.
+ * level 0 is fresh oil, every darker() step adds one, every brighter() step subtracts one.
+ * The colors are computed once, so deriving a shade creates no garbage.
+ * @author Mon-Hong Shen
+ */
+public final class OilShade {
+
+	public static final Color ORG_CLR = new Color(255, 0, 0);
+	public static final int MIN_LEVEL = -8;  // brighter than this looks the same
+	public static final int MAX_LEVEL = 24;  // darker than this is black
+
+	private static final Color[] COLORS = new Color[MAX_LEVEL - MIN_LEVEL + 1];
+	static {
+		Color color = ORG_CLR;
+		for (int level = 0; level <= MAX_LEVEL; level++, color = color.darker())
+			COLORS[level - MIN_LEVEL] = color;
+		color = ORG_CLR.brighter();
+		for (int level = -1; level >= MIN_LEVEL; level--, color = color.brighter())
+			COLORS[level - MIN_LEVEL] = color;
+	}
+
+	private OilShade() {
+	}
+
+	/**
+	 * @param level darkness level, clamped to MIN_LEVEL..MAX_LEVEL
+	 * @return the shared color of this level
+	 */
+	public static Color color(int level) {
+		return COLORS[Math.min(Math.max(level, MIN_LEVEL), MAX_LEVEL) - MIN_LEVEL];
+	}
+
+	/**
+	 * @param level darkness level, clamped to MIN_LEVEL..MAX_LEVEL
+	 * @return the rgb of this level
+	 */
+	public static int rgb(int level) {
+		return color(level).getRGB();
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright All rights reserved.
+ * File: OilSnapshot.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+/**
+ * An immutable copy of an OilField at one tick, see OilField.snapshot().
+ * The chunks are frozen copies, and a chunk that didn't change since
+ * the previous snapshot is shared with it. So a reader finds the changed
+ * chunks by comparing the chunk references, without copying the whole ocean.
+ * @author Mon-Hong Shen
+ */
+public final class OilSnapshot {
+
+	private final int width;
+	private final int height;
+	private final int size;
+	private final int age;
+	private final Chunk[] chunks; // the chunks having oil
+
+	/**
+	 * a frozen chunk of the field: the oil bits of every row and the birth ages
+	 */
+	public static final class Chunk {
+		private final int index;
+		private final int originX;
+		private final int originY;
+		private final long[] rows;
+		private final int[] born;
+
+		Chunk(int index, int originX, int originY, long[] rows, int[] born) {
+			this.index = index;
+			this.originX = originX;
+			this.originY = originY;
+			this.rows = rows;
+			this.born = born;
+		}
+
+		/**
+		 * @return the chunk index in the field, the same index for the same ocean area
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		public int getOriginX() {
+			return originX;
+		}
+
+		public int getOriginY() {
+			return originY;
+		}
+
+		/**
+		 * @param ly row of the chunk, from 0 to OilField.CHUNK-1
+		 * @return one bit per polluted grid, bit lx is the grid (originX+lx, originY+ly)
+		 */
+		public long getRow(int ly) {
+			return rows[ly];
+		}
+
+		int getBorn(int lx, int ly) {
+			return born[(ly << OilField.CHUNK_SHIFT) | lx];
+		}
+	}
+
+	OilSnapshot(int width, int height, int size, int age, Chunk[] chunks) {
+		this.width = width;
+		this.height = height;
+		this.size = size;
+		this.age = age;
+		this.chunks = chunks;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return darker() steps of the field, the levels of every grid change with it
+	 */
+	public int getAge() {
+		return age;
+	}
+
+	/**
+	 * @return the number of chunks having oil
+	 */
+	public int chunkCount() {
+		return chunks.length;
+	}
+
+	/**
+	 * @param i from 0 to chunkCount()-1
+	 */
+	public Chunk chunk(int i) {
+		return chunks[i];
+	}
+
+	/**
+	 * @return the darkness level of the polluted grid (originX+lx, originY+ly) of the chunk
+	 */
+	public int getLevel(Chunk chunk, int lx, int ly) {
+		return age - chunk.getBorn(lx, ly);
+	}
+}
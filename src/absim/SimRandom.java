@@ -0,0 +1,63 @@
+/*
+ * Copyright All rights reserved.
+ * File: SimRandom.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+/**
+ * The random numbers of one simulation (SplitMix64).
+ * The whole state is one long, so a run is repeated by using the same seed,
+ * and can be saved and restored with getState()/setState().
+ * Not thread-safe, every simulation has its own.
+ * @author Mon-Hong Shen
+ */
+public final class SimRandom {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long state;
+
+	public SimRandom(long seed) {
+		this.state = seed;
+	}
+
+	public long getState() {
+		return state;
+	}
+
+	public void setState(long state) {
+		this.state = state;
+	}
+
+	public long nextLong() {
+		long z = (state += GOLDEN_GAMMA);
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * @param bound greater than 0
+	 * @return a uniform int from 0 to bound-1
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0)
+			throw new IllegalArgumentException("bound must be positive: " + bound);
+		int r = next31();
+		int m = bound - 1;
+		if ((bound & m) == 0) // power of two
+			return (int) ((bound * (long) r) >> 31);
+		// reject the last partial range, so every value is equally likely
+		for (int u = r; u - (r = u % bound) + m < 0; u = next31())
+			;
+		return r;
+	}
+
+	private int next31() {
+		return (int) (nextLong() >>> 33);
+	}
+}
@@ -8,12 +8,15 @@
  */
 package absim;
 
-import java.awt.Color;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
 
+import absim.SimulationMetrics.Phase;
+import absim.SimulationRecorder.Command;
+
 /**
  * This is a actual simulation for boats and oilGrids
  * @author Mon-Hong Shen
@@ -21,9 +24,24 @@ import java.util.concurrent.ThreadLocalRandom;
 public abstract class Simulation extends SimulationThread {
 
 	// Canvas
-    public static final int MAX_GRID = 100;
-	protected static final ThreadLocalRandom RANDOM = ThreadLocalRandom.current();
-	protected static final Color ORG_CLR = new Color(255, 0, 0);
+    public static final int DEFAULT_GRID = 100;
+	protected static final int ORG_LEVEL = 0; // fresh oil
+	private static final int BOAT_TASK_SIZE = 64; // boats per fork-join task
+	
+	// ocean size, the valid grids are from (0,0) to the Port:(maxGridX, maxGridY)
+	protected int maxGridX = DEFAULT_GRID;
+	protected int maxGridY = DEFAULT_GRID;
+	
+	// random numbers of this simulation, the same seed gives the same run
+	private long seed = ThreadLocalRandom.current().nextLong();
+	private boolean seeded; // false: a new seed for every start
+	protected final SimRandom random = new SimRandom(seed);
+	// ids of the boats of this simulation
+	private int boatIds;
+	
+	// ticks since start, and the tick when the ocean became clean (-1 if not yet)
+	protected long tick;
+	protected long cleanTick = -1;
 	
 	// automation flag (to generate boats automatically)
 	protected int autoGenBostFlg;
@@ -44,6 +62,146 @@ public abstract class Simulation extends SimulationThread {
 	// wind's direction
 	protected Direction wind = Direction.WEST;
 
+	public int getMaxGridX() {
+		return maxGridX;
+	}
+	public int getMaxGridY() {
+		return maxGridY;
+	}
+	
+	/**
+	 * set the ocean size of this simulation, before it starts
+	 * @param maxGridX
+	 * @param maxGridY
+	 */
+	public void setOceanSize(int maxGridX, int maxGridY) {
+		if (isRunning())
+			throw new IllegalStateException("ocean size can only be set before the simulation starts");
+		if (maxGridX <= 0 || maxGridY <= 0)
+			throw new IllegalArgumentException("invalid ocean size: " + maxGridX + "x" + maxGridY);
+		this.maxGridX = maxGridX;
+		this.maxGridY = maxGridY;
+		this.oilField = null; // re-created by start()
+	}
+	
+	// where boats recharge and unload, no depot=in place
+	private int[] depotX = new int[0];
+	private int[] depotY = new int[0];
+	private DepotMap depots;
+	
+	/**
+	 * boats travel to the nearest depot to recharge and unload, instead of doing it in place.
+	 * set it before the simulation starts, the depots must be inside the ocean,
+	 * and every grid must be within a full battery (Fleet.MAX_BATT) of a depot,
+	 * checked here against the current ocean size and again by start().
+	 * @param depotX no depot=in place (default)
+	 * @param depotY
+	 */
+	public void setDepots(int[] depotX, int[] depotY) {
+		if (isRunning())
+			throw new IllegalStateException("depots can only be set before the simulation starts");
+		if (depotX.length != depotY.length)
+			throw new IllegalArgumentException("invalid depots: " + depotX.length + " x, " + depotY.length + " y");
+		if (depotX.length > 0)
+			newDepotMap(depotX, depotY);
+		this.depotX = depotX.clone();
+		this.depotY = depotY.clone();
+	}
+	
+	/**
+	 * @return the depots of the run, null if boats recharge and unload in place or before the start
+	 */
+	public DepotMap getDepots() {
+		return depots;
+	}
+	
+	/**
+	 * precompute the nearest depots once per run, shared by every boat
+	 */
+	private void initDepots() {
+		depots = (depotX.length == 0) ? null : newDepotMap(depotX, depotY);
+		fleet.setDepots(depots);
+	}
+	
+	/**
+	 * @throws IllegalArgumentException if a depot is outside the ocean or a grid is out of a boat's reach
+	 */
+	private DepotMap newDepotMap(int[] depotX, int[] depotY) {
+		DepotMap map = new DepotMap(maxGridX+1, maxGridY+1, depotX, depotY);
+		if (!map.reaches(Fleet.MAX_BATT))
+			throw new IllegalArgumentException("depots out of reach: some grids are farther than "
+					+ Fleet.MAX_BATT + " moves from every depot");
+		return map;
+	}
+	
+	/**
+	 * how oil spreads:
+	 * EDGE: every wind step extends the leading edge of the spill by one grid (default)
+	 * CONCENTRATION: a concentration per grid diffuses, drifts and evaporates every tick (see ConcentrationField)
+	 * WIND_FIELD: CONCENTRATION drifting with a wind per region, which follows the wind slowly (see WindField)
+	 */
+	public enum Diffusion { EDGE, CONCENTRATION, WIND_FIELD }
+	
+	private Diffusion diffusion = Diffusion.EDGE;
+	// the oil concentrations in CONCENTRATION diffusion, null before the first tick
+	private ConcentrationField concentration;
+	// the regional winds in WIND_FIELD diffusion, null before the first tick
+	private WindField windField;
+	
+	public Diffusion getDiffusion() {
+		return diffusion;
+	}
+	
+	/**
+	 * choose how oil spreads, before the simulation starts
+	 * @param diffusion
+	 */
+	public void setDiffusion(Diffusion diffusion) {
+		if (isRunning())
+			throw new IllegalStateException("the diffusion can only be set before the simulation starts");
+		this.diffusion = diffusion;
+	}
+	
+	/**
+	 * @return the oil concentrations in CONCENTRATION and WIND_FIELD diffusion, or null
+	 */
+	public ConcentrationField getConcentration() {
+		return concentration;
+	}
+	
+	/**
+	 * @return the regional winds in WIND_FIELD diffusion, or null
+	 */
+	public WindField getWindField() {
+		return windField;
+	}
+	
+	/**
+	 * @return the seed of the last start, or the seed set by setSeed()
+	 */
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * set the seed of the random numbers, before the simulation starts.
+	 * without a seed, every start takes a new one.
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		if (isRunning())
+			throw new IllegalStateException("the seed can only be set before the simulation starts");
+		this.seed = seed;
+		this.seeded = true;
+	}
+	
+	public long getTick() {
+		return tick;
+	}
+	public long getCleanTick() {
+		return cleanTick;
+	}
+	
 	public int getMaxAutoGenBostFlg() {
 		return maxAutoGenBostFlg;
 	}	
@@ -60,45 +218,389 @@ public abstract class Simulation extends SimulationThread {
 		return wind;
 	}
 
-	// OceanGrid
-	protected LinkedList<OceanGrid> oilGridList;
-	public LinkedList<OceanGrid> getOilList() {
-		return oilGridList;
+	// OilField
+	protected OilField oilField;
+	public OilField getOilField() {
+		return oilField;
 	}
 
-	// boatList
-	protected LinkedList<Boat> boatList;
-	public LinkedList<Boat> getBoatList() {
-		return boatList;
+	// boats
+	protected final Fleet fleet = new Fleet();
+	public Fleet getFleet() {
+		return fleet;
+	}
+	
+	/**
+	 * @return the boats as flyweights of the fleet
+	 */
+	public List<Boat> getBoatList() {
+		return fleet.asList();
+	}
+	
+	// how boats choose the next oil grid
+	protected ABRule.CleanMode cleanMode = ABRule.CleanMode.OLDEST;
+	public ABRule.CleanMode getCleanMode() {
+		return cleanMode;
+	}
+	
+	/**
+	 * set the clean mode of every boat, existing and new ones
+	 * @param cleanMode
+	 */
+	public void setCleanMode(ABRule.CleanMode cleanMode) {
+		this.cleanMode = cleanMode;
+		fleet.setCleanMode(0, fleet.size(), cleanMode);
+		recordCommand(Command.CLEAN_MODE, cleanMode.ordinal());
+	}
+	
+	// assigns distinct oil grids to boats in DISPATCHED mode
+	protected final Dispatcher dispatcher = new Dispatcher();
+	public Dispatcher getDispatcher() {
+		return dispatcher;
+	}
+	
+	// distances to the nearest oil, kept while the boats are in GRADIENT mode, null=not kept
+	private OilDistanceField oilDistance;
+	public OilDistanceField getOilDistance() {
+		return oilDistance;
+	}
+	
+	// records the seed and the external commands of a run, null=not recording
+	private SimulationRecorder recorder;
+	
+	/**
+	 * record the next run, from now until it stops.
+	 * set it after the ocean size and clean mode, before the commands to record.
+	 * @param recorder
+	 */
+	public void setRecorder(SimulationRecorder recorder) {
+		if (isRunning())
+			throw new IllegalStateException("the recorder can only be set before the simulation starts");
+		this.recorder = recorder;
+		if (recorder != null)
+			recorder.begin(this);
+	}
+	
+	// per-tick telemetry, null=off
+	private TelemetryLog telemetry;
+	
+	/**
+	 * append a record to the log after every tick, the caller closes the log
+	 * @param telemetry null=off
+	 */
+	public void setTelemetry(TelemetryLog telemetry) {
+		this.telemetry = telemetry;
+	}
+	
+	@Override
+	protected final void recordCommand(Command command, int arg) {
+		if (recorder != null)
+			recorder.record(tick, command, arg);
+	}
+	
+	/**
+	 * apply a recorded command, the same way as the UI did
+	 */
+	final void apply(Command command, int arg) {
+		switch (command) {
+			case WIND:        changeDirection(Direction.values()[arg]); break;
+			case NEW_BOAT:    newBoatToList(); break;
+			case CLEAR_BOATS: clearBoatList(); break;
+			case NEW_OIL:     addOilGrid(); break;
+			case CLEAR_OIL:   clearOilGridList(); break;
+			case CLEAN_MODE:  setCleanMode(ABRule.CleanMode.values()[arg]); break;
+			default: throw new IllegalArgumentException("not a command: " + command);
+		}
+	}
+	
+	// the state shown to observers, replaced (never modified) after every change
+	private volatile SimulationSnapshot snapshot;
+	private final EventBus<SimulationSnapshot> events = new EventBus<>();
+	
+	/**
+	 * @return the last published state, or null before the first one. lock-free, safe from any thread.
+	 */
+	public SimulationSnapshot getSnapshot() {
+		return snapshot;
+	}
+	
+	/**
+	 * @return the bus delivering every published snapshot, subscribe to observe the simulation
+	 */
+	public EventBus<SimulationSnapshot> getEvents() {
+		return events;
+	}
+	
+	// phase latencies and counters, see SimulationMetrics.register() for JMX
+	private final SimulationMetrics metrics = new SimulationMetrics(getClass().getSimpleName());
+	public SimulationMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * copy the current state into a new snapshot and publish it to the subscribers,
+	 * only called by the thread changing the simulation
+	 */
+	@Override
+	public final void publish() {
+		long time = System.nanoTime();
+		snapshot = new SimulationSnapshot(this);
+		events.publish(snapshot);
+		metrics.record(Phase.NOTIFY, System.nanoTime() - time);
+	}
+	
+	/**
+	 * a new simulation of the class named in a checkpoint or a recorded log
+	 * @param className a subclass of Simulation with a no-argument constructor
+	 * @throws ClassCastException if the class is not a Simulation
+	 */
+	static Simulation newInstance(String className) throws ReflectiveOperationException {
+		return Class.forName(className).asSubclass(Simulation.class).getDeclaredConstructor().newInstance();
+	}
+	
+	/**
+	 * @return the bytes written by writeTo()
+	 */
+	long checkpointBytes() {
+		long bytes = 4*2 + 8+1+8+4 + 8*2 + 4*9 + 2 + Dispatcher.CHECKPOINT_BYTES + 1 + 4;
+		if (oilField != null) bytes += oilField.checkpointBytes();
+		bytes += (long) Fleet.BOAT_BYTES * fleet.size();
+		bytes += 4 + 8L * depotX.length;
+		bytes += 2;
+		if (hasConcentration()) bytes += concentration.checkpointBytes();
+		bytes += 1;
+		if (windField != null) bytes += windField.checkpointBytes();
+		return bytes;
+	}
+	
+	/**
+	 * write the whole state into a checkpoint, between two ticks (see Checkpoint)
+	 */
+	void writeTo(ByteBuffer out) {
+		out.putInt(maxGridX);
+		out.putInt(maxGridY);
+		out.putLong(seed);
+		out.put((byte) (seeded ? 1 : 0));
+		out.putLong(random.getState());
+		out.putInt(boatIds);
+		out.putLong(tick);
+		out.putLong(cleanTick);
+		// phase counters
+		out.putInt(autoGenBostFlg);
+		out.putInt(maxAutoGenBostFlg);
+		out.putInt(maxOilGridCountFlg);
+		out.putInt(darkerFlg);
+		out.putInt(maxDarkerFlg);
+		out.putInt(windIntensityFlg);
+		out.putInt(maxWindIntensityFlg);
+		out.putInt(windDirectionFlg);
+		out.putInt(maxWindDirectionFlg);
+		out.put((byte) wind.ordinal());
+		out.put((byte) cleanMode.ordinal());
+		dispatcher.writeTo(out);
+		
+		out.put((byte) (oilField != null ? 1 : 0));
+		if (oilField != null)
+			oilField.writeTo(out);
+		out.putInt(fleet.size());
+		for (int i = 0; i < fleet.size(); i++)
+			fleet.writeTo(i, out);
+		out.putInt(depotX.length);
+		for (int d = 0; d < depotX.length; d++) {
+			out.putInt(depotX[d]);
+			out.putInt(depotY[d]);
+		}
+		out.put((byte) diffusion.ordinal());
+		out.put((byte) (hasConcentration() ? 1 : 0));
+		if (hasConcentration())
+			concentration.writeTo(out);
+		out.put((byte) (windField != null ? 1 : 0));
+		if (windField != null)
+			windField.writeTo(out);
+	}
+	
+	/**
+	 * @return true if the concentrations follow the current oil field
+	 */
+	private boolean hasConcentration() {
+		return concentration != null && oilField != null && concentration.getOilField() == oilField;
+	}
+	
+	/**
+	 * read the state written by writeTo(), into this new simulation
+	 * @param version of the checkpoint, version 1 has no depots, version 2 no diffusion, version 3 no wind field
+	 */
+	void readFrom(ByteBuffer in, int version) {
+		maxGridX = in.getInt();
+		maxGridY = in.getInt();
+		seed = in.getLong();
+		seeded = in.get() != 0;
+		random.setState(in.getLong());
+		boatIds = in.getInt();
+		tick = in.getLong();
+		cleanTick = in.getLong();
+		autoGenBostFlg = in.getInt();
+		maxAutoGenBostFlg = in.getInt();
+		maxOilGridCountFlg = in.getInt();
+		darkerFlg = in.getInt();
+		maxDarkerFlg = in.getInt();
+		windIntensityFlg = in.getInt();
+		maxWindIntensityFlg = in.getInt();
+		windDirectionFlg = in.getInt();
+		maxWindDirectionFlg = in.getInt();
+		wind = Direction.values()[in.get()];
+		cleanMode = ABRule.CleanMode.values()[in.get()];
+		dispatcher.readFrom(in);
+		
+		oilField = (in.get() != 0) ? OilField.readFrom(in) : null;
+		int boats = in.getInt();
+		fleet.clear();
+		for (int i = 0; i < boats; i++) {
+			fleet.readFrom(in);
+			// the dispatcher's reservations are the targets of the boats
+			int target = fleet.target[i];
+			if (target != OilField.NONE && oilField != null)
+				oilField.reserve(oilField.xOf(target), oilField.yOf(target));
+		}
+		int depotCount = (version >= 2) ? in.getInt() : 0;
+		depotX = new int[depotCount];
+		depotY = new int[depotCount];
+		for (int d = 0; d < depotCount; d++) {
+			depotX[d] = in.getInt();
+			depotY[d] = in.getInt();
+		}
+		initDepots();
+		diffusion = (version >= 3) ? Diffusion.values()[in.get()] : Diffusion.EDGE;
+		concentration = (version >= 3 && in.get() != 0) ? ConcentrationField.readFrom(in, oilField) : null;
+		windField = null;
+		if (version >= 4 && in.get() != 0) {
+			windField = new WindField(maxGridX+1, maxGridY+1);
+			windField.readFrom(in);
+		}
+	}
+	
+	// parallel boats phase, null=serial
+	private ForkJoinPool boatPool;
+	private int[] claimedCells = new int[0];
+	
+	/**
+	 * move boats on a fork-join pool, every oil grid is claimed by exactly one boat.
+	 * with one thread the result is the same as the serial phase.
+	 * @param threads 0=serial (default)
+	 */
+	public void setBoatParallelism(int threads) {
+		if (threads < 0)
+			throw new IllegalArgumentException("invalid boat parallelism: " + threads);
+		if (boatPool != null)
+			boatPool.shutdown();
+		boatPool = (threads == 0) ? null : new ForkJoinPool(threads);
 	}
     
 	/// initialize different factors
-	protected abstract void start();
+	protected abstract void initFactors();
+	
+	// parallel oil concentration kernel, null=single-threaded
+	private ForkJoinPool environmentPool;
+	
+	/**
+	 * run the per-grid oil update (CONCENTRATION diffusion) in bands of rows on a fork-join pool,
+	 * the result is identical to the single-threaded update.
+	 * @param threads 0=single-threaded (default)
+	 */
+	public void setEnvironmentParallelism(int threads) {
+		if (threads < 0)
+			throw new IllegalArgumentException("invalid environment parallelism: " + threads);
+		if (environmentPool != null)
+			environmentPool.shutdown();
+		environmentPool = (threads == 0) ? null : new ForkJoinPool(threads);
+	}
+    
+	/**
+	 * reset the counters and the random numbers, then initialize different factors
+	 */
+	@Override
+	protected final void start() {
+		if (!seeded)
+			seed = ThreadLocalRandom.current().nextLong();
+		initDepots(); // first, it rejects depots out of reach of the ocean size
+		random.setState(seed);
+		if (recorder != null)
+			recorder.start(seed, maxGridX, maxGridY, depotX, depotY, diffusion);
+		boatIds = 0;
+		tick = 0;
+		cleanTick = -1;
+		dispatcher.reset();
+		metrics.reset();
+		if (concentration != null) {
+			concentration.detach();
+			concentration = null;
+		}
+		windField = null;
+		initFactors();
+	}
 	
 	
 	@Override
 	public final void stop() {
-		boatList.forEach(boat -> boat.forceStop());
+		if (recorder != null) {
+			recorder.end(tick);
+			recorder = null;
+		}
+		fleet.forceStop(0, fleet.size());
 	}
 	
 	@Override
 	public final void update() {
     	// if no polluted oil, stop the simulation.
-    	if (oilGridList == null || oilGridList.isEmpty()) {
+    	if (oilField == null || oilField.isEmpty()) {
     		stopSim();
     		return;
     	}
     	
+    	long time = System.nanoTime();
     	autoGenBoats();
+    	time = lap(Phase.SPAWN, time);
 		
 		darkerExistingOil();
+		time = lap(Phase.DARKER, time);
 		
 		diffuseOilByWind();
+		time = lap(Phase.DIFFUSE, time);
 		
 		changeWindDirection();
+		time = lap(Phase.WIND, time);
+		
+		if (cleanMode == ABRule.CleanMode.DISPATCHED)
+			dispatcher.assign(fleet, oilField);
+		time = lap(Phase.DISPATCH, time);
+		
+		updateOilDistance();
+		time = lap(Phase.DISTANCE, time);
     	
-    	// Reposition moving items
-    	boatList.forEach(boat ->boat.clean(oilGridList));
+		moveBoats();
+		lap(Phase.BOATS, time);
+		
+		tick++;
+		if (oilField.isEmpty() && cleanTick < 0)
+			cleanTick = tick;
+		
+		metrics.endTick(oilField);
+		if (telemetry != null)
+			appendTelemetry();
+	}
+	
+	/**
+	 * @return now, after recording the time since start as the latency of the phase
+	 */
+	private long lap(Phase phase, long start) {
+		long now = System.nanoTime();
+		metrics.record(phase, now - start);
+		return now;
+	}
+	
+	private void appendTelemetry() {
+		telemetry.append(tick, oilField.size(), fleet.count(Fleet.MOVING), fleet.count(Fleet.CHARGING),
+				fleet.count(Fleet.CLEAN_LOADS), fleet.count(Fleet.RETURNING), wind, metrics);
 	}
 	
     /**
@@ -110,101 +612,103 @@ public abstract class Simulation extends SimulationThread {
 	}
 	
 	/**
-	 * new a boat into boatList, its position is starting from Port:(MAX_GRID, MAX_GRID)
+	 * new a boat into the fleet, its position is starting from Port:(maxGridX, maxGridY)
 	 */
 	@Override
 	protected final void newBoatToList() {
-    	if (boatList == null) 
-    		boatList = new LinkedList<>();
-    	boatList.add(new Boat(MAX_GRID, MAX_GRID));
+    	fleet.add(++boatIds, maxGridX, maxGridY, cleanMode);
+    	metrics.boatSpawned();
 	}
 	
 	@Override
 	protected void clearBoatList() {
-		boatList.clear();
+		dispatcher.release(fleet, oilField);
+		fleet.clear();
 	}
 	
 	/**
-	 * a new oilGrid into oilGridList
-	 * if oilGridList is empty, add a RANDOM position oilGrid into oilGridList;
+	 * new an empty oilField covering every valid grid, from (0,0) to (maxGridX, maxGridY).
+	 */
+	protected final OilField newOilField() {
+		return new OilField(maxGridX+1, maxGridY+1);
+	}
+	
+	/**
+	 * a new oilGrid into oilField
+	 * if oilField is empty, add a random position oilGrid into oilField;
 	 * else call diffuseNextOil()
 	 */
 	@Override
 	protected final void addOilGrid() {
-		if (oilGridList == null)
-			oilGridList = new LinkedList<>();
+		if (oilField == null)
+			oilField = newOilField();
 
-		if (oilGridList.isEmpty())
-			oilGridList.add(new OceanGrid(RANDOM.nextInt(MAX_GRID), RANDOM.nextInt(MAX_GRID), ORG_CLR));
+		if (oilField.isEmpty())
+			oilField.add(random.nextInt(maxGridX), random.nextInt(maxGridY), ORG_LEVEL);
 		else 
 			genNextOil();
 	}
 	
 	@Override
 	protected void clearOilGridList() {
-		oilGridList.clear();
+		oilField.clear();
+		dispatcher.release(fleet, oilField);
 	}
 	
 	/**
-	 * generate next nearest oil into oilGridList by RANDOM (no wind)
+	 * generate next nearest oil into oilField by random (no wind)
 	 */
 	private final void genNextOil() {
-		OceanGrid lastOilGrid = oilGridList.peekLast();
-		int x = lastOilGrid.getX();
-		int y = lastOilGrid.getY();
-		Color clr = lastOilGrid.getColor().brighter();
+		int lastOilGrid = oilField.last();
+		int x = oilField.xOf(lastOilGrid);
+		int y = oilField.yOf(lastOilGrid);
+		int level = oilField.getLevel(lastOilGrid) - 1; // brighter
 
 		int tempX = 0;
 		int tempY = 0;
-		switch (RANDOM.nextInt(4)) {
+		switch (random.nextInt(4)) {
 			case 0: tempX = x+1; tempY = y;   break;
 			case 1: tempX = x-1; tempY = y;   break;
 			case 2: tempX = x;   tempY = y+1; break;
 			case 3: tempX = x;   tempY = y-1; break;
 			default:
 		}
-		tempX = changeToValidGrid(tempX);
-		tempY = changeToValidGrid(tempY);
+		tempX = changeToValidX(tempX);
+		tempY = changeToValidY(tempY);
 		
-		oilGridList.add(new OceanGrid(tempX, tempY, clr)); 
+		oilField.add(tempX, tempY, level); 
 	}
 	
 	/**
-	 * find maximum or minimum
-	 * if isLargerVal=true, find the positive boundary
-	 * if isLargerVal=false,
-	 * @param oilMap
-	 * @param key
-	 * @param val
-	 * @param isLargerVal
+	 * change To a Valid Grid's x position number.
+	 * if (validX < 0)        validX = 0;
+	 * if (validX > maxGridX) validX = maxGridX;
+	 * @param validX
+	 * @return validX's number, from 0 to maxGridX.
 	 */
-	protected final void findBoundary(Map<Integer, Integer> oilMap, int key, int val, boolean isLargerVal) {
-		Integer temp = oilMap.get(key);
-		if (temp == null)
-			oilMap.put(key, val);
-		else if (isLargerVal && (val > temp))
-			oilMap.put(key, val);
-		else if (!isLargerVal && (val < temp))
-			oilMap.put(key, val);
+	protected final int changeToValidX(int validX) {
+		if (validX < 0)        validX = 0;
+		if (validX > maxGridX) validX = maxGridX;
+		return validX;
 	}
-
+	
 	/**
-	 * change To a Valid Grid's position number.
-	 * if (validGrid < 0)        validGrid = 0;
-	 * if (validGrid > MAX_GRID) validGrid = MAX_GRID;
-	 * @param validGrid
-	 * @return validGrid's number, from 0 to MAX_GRID.
+	 * change To a Valid Grid's y position number.
+	 * if (validY < 0)        validY = 0;
+	 * if (validY > maxGridY) validY = maxGridY;
+	 * @param validY
+	 * @return validY's number, from 0 to maxGridY.
 	 */
-	protected final int changeToValidGrid(int validGrid) {
-		if (validGrid < 0)        validGrid = 0;
-		if (validGrid > MAX_GRID) validGrid = MAX_GRID;
-		return validGrid;
+	protected final int changeToValidY(int validY) {
+		if (validY < 0)        validY = 0;
+		if (validY > maxGridY) validY = maxGridY;
+		return validY;
 	}
 	
 	/**
 	 * auto generated boats
 	 */
-	private final void autoGenBoats() {
+	final void autoGenBoats() {
 		// wind factor: diffuseOilByWind frequency
 		autoGenBostFlg++;
 		if (maxAutoGenBostFlg!=0 && autoGenBostFlg>=maxAutoGenBostFlg) {
@@ -216,60 +720,158 @@ public abstract class Simulation extends SimulationThread {
 	/**
 	 * darker existing oil
 	 */
-	private final void darkerExistingOil() {
+	final void darkerExistingOil() {
 		// oil diffusion control flag
 		darkerFlg++;
 		if (maxDarkerFlg!=0 && darkerFlg >= maxDarkerFlg) {
 			darkerFlg = 0;
-			// darker existing oil
-			oilGridList.forEach(v -> v.darker());
+			// darker existing oil, the colors are derived lazily
+			oilField.darker();
 		}
 	}
 	
 	/**
 	 * diffuse oil by wind
 	 */
-	private final void diffuseOilByWind() {
+	final void diffuseOilByWind() {
+		if (diffusion != Diffusion.EDGE) {
+			diffuseConcentration();
+			return;
+		}
 		// wind factor: diffuseOilByWind frequency
 		windIntensityFlg++;
 		if (maxWindIntensityFlg!=0 && windIntensityFlg>=maxWindIntensityFlg) {
 			windIntensityFlg = 0;
 			
-			Map<Integer, Integer> oilMap = new HashMap<>();
+			// only the leading edge of the spill is touched
 			switch(wind) {
-				// find diffusing edge Y -
+				// diffusing edge Y -
 				case SOUTH:
-					oilGridList.forEach(v -> findBoundary(oilMap, v.getX(), v.getY(), false));
-					oilMap.forEach((k,v) -> oilGridList.add(new OceanGrid(k, changeToValidGrid(v-1), ORG_CLR)));
+					for (int x = oilField.nextOccupiedColumn(0); x != OilField.NONE; x = oilField.nextOccupiedColumn(x+1))
+						oilField.add(x, changeToValidY(oilField.colMinY(x)-1), ORG_LEVEL);
 					break;
-				// find diffusing edge Y +
+				// diffusing edge Y +
 				case NORTH:
-					oilGridList.forEach(v -> findBoundary(oilMap, v.getX(), v.getY(), true));
-					oilMap.forEach((k,v) -> oilGridList.add(new OceanGrid(k, changeToValidGrid(v+1), ORG_CLR)));
+					for (int x = oilField.nextOccupiedColumn(0); x != OilField.NONE; x = oilField.nextOccupiedColumn(x+1))
+						oilField.add(x, changeToValidY(oilField.colMaxY(x)+1), ORG_LEVEL);
 					break;
-				// find diffusing edge X +
+				// diffusing edge X +
 				case WEST:
-					oilGridList.forEach(v -> findBoundary(oilMap, v.getY(), v.getX(), true));
-					oilMap.forEach((k,v) -> oilGridList.add(new OceanGrid(changeToValidGrid(v+1), k, ORG_CLR)));
+					for (int y = oilField.nextOccupiedRow(0); y != OilField.NONE; y = oilField.nextOccupiedRow(y+1))
+						oilField.add(changeToValidX(oilField.rowMaxX(y)+1), y, ORG_LEVEL);
 					break;
-				// find diffusing edge X -
+				// diffusing edge X -
 				case EAST:
-					oilGridList.forEach(v -> findBoundary(oilMap, v.getY(), v.getX(), false));
-					oilMap.forEach((k,v) -> oilGridList.add(new OceanGrid(changeToValidGrid(v-1), k, ORG_CLR)));
+					for (int y = oilField.nextOccupiedRow(0); y != OilField.NONE; y = oilField.nextOccupiedRow(y+1))
+						oilField.add(changeToValidX(oilField.rowMinX(y)-1), y, ORG_LEVEL);
 					break;
 				default:
 			}
 		}
 	}
 
+	/**
+	 * one tick of the concentration kernel, the field is created from the oil field
+	 * at the first tick and again when the oil field is replaced
+	 */
+	private void diffuseConcentration() {
+		if (!hasConcentration()) {
+			if (concentration != null)
+				concentration.detach();
+			concentration = new ConcentrationField(oilField);
+		}
+		if (diffusion == Diffusion.WIND_FIELD) {
+			if (windField == null)
+				windField = new WindField(maxGridX+1, maxGridY+1);
+			concentration.step(windField, environmentPool);
+		}
+		else {
+			concentration.step(wind, environmentPool);
+		}
+	}
+
+	/**
+	 * bring the distance field up to date with the oil added and removed since the last tick.
+	 * it is built from the whole oil field when the boats switch to GRADIENT mode
+	 * or the oil field is replaced, and dropped when they switch away.
+	 */
+	final void updateOilDistance() {
+		if (cleanMode != ABRule.CleanMode.GRADIENT) {
+			if (oilDistance != null) {
+				oilDistance.detach();
+				oilDistance = null;
+				fleet.setOilDistance(null);
+			}
+			return;
+		}
+		if (oilDistance != null && oilDistance.getOilField() == oilField) {
+			oilDistance.update();
+			return;
+		}
+		if (oilDistance != null)
+			oilDistance.detach();
+		oilDistance = new OilDistanceField(oilField);
+		fleet.setOilDistance(oilDistance);
+	}
+
+	/**
+	 * Reposition moving items, every boat cleans the oil
+	 */
+	final void moveBoats() {
+		if (boatPool == null) {
+			fleet.clean(0, fleet.size(), oilField);
+			return;
+		}
+		
+		// boats only claim oil concurrently, the claimed oil is removed afterwards
+		int boats = fleet.size();
+		if (claimedCells.length < boats)
+			claimedCells = new int[boats];
+		boatPool.invoke(new MoveBoatsTask(0, boats));
+		for (int i = 0; i < boats; i++) {
+			int cell = claimedCells[i];
+			if (cell != OilField.NONE)
+				oilField.remove(oilField.xOf(cell), oilField.yOf(cell));
+		}
+	}
+	
+	/**
+	 * move the boats from index 'from' to 'to' (exclusive), in index order
+	 */
+	private final class MoveBoatsTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from;
+		private final int to;
+		
+		MoveBoatsTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= BOAT_TASK_SIZE) {
+				fleet.claimNext(from, to, oilField, claimedCells);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new MoveBoatsTask(from, mid), new MoveBoatsTask(mid, to));
+		}
+	}
+
 	/**
 	 * change Wind's Direction
 	 */
-	private final void changeWindDirection() {
+	final void changeWindDirection() {
+		// the regional winds follow the wind a little every VARY_TICKS ticks,
+		// the stencils of the concentration field are reused in between
+		if (windField != null && tick % WindField.VARY_TICKS == 0)
+			windField.vary(wind, random);
+		
 		windDirectionFlg++;
 		if (maxWindDirectionFlg!=0 && windDirectionFlg>=maxWindDirectionFlg) {
 			windDirectionFlg = 0;
-			switch(RANDOM.nextInt(5)) {
+			switch(random.nextInt(5)) {
 				case 0: wind = Direction.EAST;  break;
 				case 1: wind = Direction.NORTH; break;
 				case 2: wind = Direction.SOUTH; break;
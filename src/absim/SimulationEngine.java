@@ -0,0 +1,83 @@
+/*
+ * Copyright All rights reserved.
+ * File: SimulationEngine.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+/**
+ * Headless driver of a Simulation.
+ * It runs the simulation on the caller's thread as fast as possible,
+ * no observers are notified and no delay between ticks.
+ * @author Mon-Hong Shen
+ */
+public class SimulationEngine {
+
+	private final Simulation sim;
+
+	public SimulationEngine(Simulation sim) {
+		this.sim = sim;
+	}
+
+	public Simulation getSimulation() {
+		return sim;
+	}
+
+	/**
+	 * @return the number of ticks executed since start()
+	 */
+	public long getTick() {
+		return sim.getTick();
+	}
+
+	/**
+	 * initialize boats and oil of the simulation type
+	 */
+	public void start() {
+		sim.start();
+	}
+
+	/**
+	 * @return true if no polluted oil remains
+	 */
+	public boolean isClean() {
+		OilField oilField = sim.getOilField();
+		return oilField == null || oilField.isEmpty();
+	}
+
+	/**
+	 * run n ticks, or less if the ocean becomes clean
+	 * @param n
+	 * @return the number of ticks executed
+	 */
+	public long step(long n) {
+		long done = 0;
+		while (done < n && !isClean()) {
+			sim.update();
+			done++;
+		}
+		return done;
+	}
+
+	/**
+	 * run until the ocean is clean
+	 * @param maxTicks give up after maxTicks
+	 * @return the tick when the ocean became clean, or -1 if it is still polluted
+	 */
+	public long runUntilClean(long maxTicks) {
+		step(maxTicks);
+		return isClean() ? sim.getTick() : -1;
+	}
+
+	/**
+	 * run exactly the given ticks, unless the ocean becomes clean
+	 * @param ticks
+	 * @return the number of ticks executed
+	 */
+	public long runForTicks(long ticks) {
+		return step(ticks);
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright All rights reserved.
+ * File: SimulationMetrics.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and per-phase latency histograms of one simulation, since its start.
+ * The simulation times every phase of Simulation.update() and every publish() (notify),
+ * register() exposes them through JMX to watch a running simulation with the standard JVM tools.
+ * @author Mon-Hong Shen
+ */
+public final class SimulationMetrics implements SimulationMetricsMXBean {
+
+	/**
+	 * the timed phases, in the order of a tick
+	 */
+	public enum Phase { SPAWN, DARKER, DIFFUSE, WIND, DISPATCH, DISTANCE, BOATS, NOTIFY }
+
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	private final String name;
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Phase.values().length];
+	private final long[] lastNanos = new long[Phase.values().length]; // of the last tick, by the simulation's thread
+	private volatile long ticks;
+	private volatile long oilAdded;
+	private volatile long oilRemoved;
+	private volatile long boatsSpawned;
+	private ObjectName objectName; // null=not registered
+
+	/**
+	 * the latency of a phase, as shown by JMX
+	 */
+	public static final class Latency {
+		private final long count;
+		private final double mean;
+		private final long p50;
+		private final long p99;
+		private final long max;
+
+		@ConstructorProperties({ "count", "mean", "p50", "p99", "max" })
+		public Latency(long count, double mean, long p50, long p99, long max) {
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return mean;
+		}
+
+		public long getP50() {
+			return p50;
+		}
+
+		public long getP99() {
+			return p99;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("count=%d mean=%.0f p50=%d p99=%d max=%d", count, mean, p50, p99, max);
+		}
+	}
+
+	/**
+	 * @param simulation the name of the simulation, made unique in the JVM
+	 */
+	SimulationMetrics(String simulation) {
+		this.name = simulation + "-" + INSTANCES.incrementAndGet();
+		for (int i = 0; i < latencies.length; i++)
+			latencies[i] = new LatencyHistogram();
+	}
+
+	/**
+	 * @return the name of the MBean, unique per simulation
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * register as absim:type=Simulation,name=getName() in the platform MBean server
+	 */
+	public synchronized void register() {
+		if (objectName != null) return;
+		try {
+			ObjectName objectName = new ObjectName("absim:type=Simulation,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			this.objectName = objectName;
+		} catch (JMException e) {
+			throw new IllegalStateException("can't register " + name, e);
+		}
+	}
+
+	/**
+	 * remove from the platform MBean server, e.g. when the simulation is discarded
+	 */
+	public synchronized void unregister() {
+		if (objectName == null) return;
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			throw new IllegalStateException("can't unregister " + name, e);
+		} finally {
+			objectName = null;
+		}
+	}
+
+	/**
+	 * @param phase
+	 * @return the histogram of the phase
+	 */
+	public LatencyHistogram getHistogram(Phase phase) {
+		return latencies[phase.ordinal()];
+	}
+
+	/**
+	 * @return the nanoseconds of the phase in the last tick
+	 */
+	long getLastNanos(Phase phase) {
+		return lastNanos[phase.ordinal()];
+	}
+
+	void record(Phase phase, long nanos) {
+		lastNanos[phase.ordinal()] = nanos;
+		latencies[phase.ordinal()].record(nanos);
+	}
+
+	/**
+	 * a tick is done
+	 * @param oilField the counters of the current field
+	 */
+	void endTick(OilField oilField) {
+		ticks++; // only the simulation's thread writes
+		oilAdded = oilField.getAddedCount();
+		oilRemoved = oilField.getRemovedCount();
+	}
+
+	void boatSpawned() {
+		boatsSpawned++;
+	}
+
+	@Override
+	public long getTicks() {
+		return ticks;
+	}
+
+	@Override
+	public long getOilAdded() {
+		return oilAdded;
+	}
+
+	@Override
+	public long getOilRemoved() {
+		return oilRemoved;
+	}
+
+	@Override
+	public long getBoatsSpawned() {
+		return boatsSpawned;
+	}
+
+	/**
+	 * @param phase
+	 * @return the current latency of the phase
+	 */
+	public Latency getLatency(Phase phase) {
+		LatencyHistogram histogram = getHistogram(phase);
+		return new Latency(histogram.getCount(), histogram.getMean(),
+				histogram.getPercentile(50), histogram.getPercentile(99), histogram.getMax());
+	}
+
+	@Override
+	public Latency getSpawnLatency() {
+		return getLatency(Phase.SPAWN);
+	}
+
+	@Override
+	public Latency getDarkerLatency() {
+		return getLatency(Phase.DARKER);
+	}
+
+	@Override
+	public Latency getDiffuseLatency() {
+		return getLatency(Phase.DIFFUSE);
+	}
+
+	@Override
+	public Latency getWindLatency() {
+		return getLatency(Phase.WIND);
+	}
+
+	@Override
+	public Latency getDispatchLatency() {
+		return getLatency(Phase.DISPATCH);
+	}
+
+	@Override
+	public Latency getDistanceLatency() {
+		return getLatency(Phase.DISTANCE);
+	}
+
+	@Override
+	public Latency getBoatsLatency() {
+		return getLatency(Phase.BOATS);
+	}
+
+	@Override
+	public Latency getNotifyLatency() {
+		return getLatency(Phase.NOTIFY);
+	}
+
+	/**
+	 * start counting from zero, the oil counters follow the oil field of the simulation
+	 */
+	@Override
+	public void reset() {
+		ticks = 0;
+		boatsSpawned = 0;
+		for (LatencyHistogram histogram : latencies)
+			histogram.reset();
+	}
+}
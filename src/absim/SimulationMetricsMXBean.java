@@ -0,0 +1,48 @@
+/*
+ * Copyright All rights reserved.
+ * File: SimulationMetricsMXBean.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import absim.SimulationMetrics.Latency;
+
+/**
+ * The JMX view of SimulationMetrics, e.g. in jconsole or VisualVM under "absim".
+ * Every phase of a tick is one attribute with its count, mean, p50, p99 and max in nanoseconds.
+ * @author Mon-Hong Shen
+ */
+public interface SimulationMetricsMXBean {
+
+	long getTicks();
+
+	long getOilAdded();
+
+	long getOilRemoved();
+
+	long getBoatsSpawned();
+
+	Latency getSpawnLatency();
+
+	Latency getDarkerLatency();
+
+	Latency getDiffuseLatency();
+
+	Latency getWindLatency();
+
+	Latency getDispatchLatency();
+
+	Latency getDistanceLatency();
+
+	Latency getBoatsLatency();
+
+	Latency getNotifyLatency();
+
+	/**
+	 * start counting from zero
+	 */
+	void reset();
+}
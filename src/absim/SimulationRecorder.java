@@ -0,0 +1,162 @@
+/*
+ * Copyright All rights reserved.
+ * File: SimulationRecorder.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Records one run of a simulation into a compact binary log:
+ * the seed, and every external command (UI buttons, clean mode) stamped with
+ * the tick it was applied on. Everything else of a run follows from the seed,
+ * so SimulationReplayer re-executes the run with identical results.
+ * Attach it with Simulation.setRecorder() before the commands to record,
+ * the log is complete when the simulation stops.
+ *
+ * Format (big endian):
+ *   int MAGIC, short VERSION, UTF simulation class, int maxGridX, int maxGridY,
+ *   byte clean mode, long random state,
+ *   then records: byte command, varint ticks since the previous record, arguments
+ *     START: long seed, int maxGridX, int maxGridY, int n, n depots (int x, int y), byte diffusion
+ *     WIND, CLEAN_MODE: byte ordinal
+ * The commands before START are applied before the simulation starts (tick 0).
+ * @author Mon-Hong Shen
+ */
+public class SimulationRecorder implements Closeable {
+
+	static final int MAGIC = 0x41425352; // "ABSR"
+	static final short VERSION = 3; // 2: depots, 3: diffusion
+
+	/**
+	 * the commands of the log
+	 */
+	public enum Command { START, END, WIND, NEW_BOAT, CLEAR_BOATS, NEW_OIL, CLEAR_OIL, CLEAN_MODE }
+
+	private final DataOutputStream out;
+	private boolean started;
+	private boolean ended;
+	private long lastTick;
+
+	public SimulationRecorder(OutputStream out) {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+	}
+
+	/**
+	 * record into a new file (replacing an existing one)
+	 * @param path
+	 */
+	public static SimulationRecorder open(Path path) throws IOException {
+		return new SimulationRecorder(Files.newOutputStream(path));
+	}
+
+	/**
+	 * @return true when the run is recorded completely
+	 */
+	public boolean isEnded() {
+		return ended;
+	}
+
+	/**
+	 * write the header: the simulation and its state before any command
+	 */
+	void begin(Simulation sim) {
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeUTF(sim.getClass().getName());
+			out.writeInt(sim.getMaxGridX());
+			out.writeInt(sim.getMaxGridY());
+			out.writeByte(sim.getCleanMode().ordinal());
+			out.writeLong(sim.random.getState());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * the simulation starts, the ticks count from here
+	 */
+	void start(long seed, int maxGridX, int maxGridY, int[] depotX, int[] depotY, Simulation.Diffusion diffusion) {
+		if (ended) return;
+		try {
+			writeHead(Command.START, 0);
+			out.writeLong(seed);
+			out.writeInt(maxGridX);
+			out.writeInt(maxGridY);
+			out.writeInt(depotX.length);
+			for (int d = 0; d < depotX.length; d++) {
+				out.writeInt(depotX[d]);
+				out.writeInt(depotY[d]);
+			}
+			out.writeByte(diffusion.ordinal());
+			started = true;
+			lastTick = 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param tick the ticks executed before the command
+	 * @param command
+	 * @param arg the ordinal of WIND and CLEAN_MODE, otherwise ignored
+	 */
+	void record(long tick, Command command, int arg) {
+		if (ended) return;
+		try {
+			writeHead(command, started ? tick : 0);
+			if (command == Command.WIND || command == Command.CLEAN_MODE)
+				out.writeByte(arg);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * the simulation stopped after tick ticks, the log is complete and closed
+	 */
+	void end(long tick) {
+		if (ended) return;
+		try {
+			writeHead(Command.END, started ? tick : 0);
+			ended = true;
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void writeHead(Command command, long tick) throws IOException {
+		out.writeByte(command.ordinal());
+		writeVarLong(tick - lastTick);
+		lastTick = tick;
+	}
+
+	/**
+	 * 7 bits per byte, the high bit tells another byte follows
+	 */
+	private void writeVarLong(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright All rights reserved.
+ * File: SimulationReplayer.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import absim.SimulationRecorder.Command;
+
+/**
+ * Re-executes a run recorded by SimulationRecorder, headless and as fast as possible.
+ * The simulation starts with the recorded seed and every command is applied
+ * before the same tick as in the recorded run, so the result is identical.
+ * Runs recorded with more than one boat thread are replayed serially, they only
+ * differ if two boats reached the same oil grid in the same tick.
+ * @author Mon-Hong Shen
+ */
+public class SimulationReplayer {
+
+	private final DataInputStream in;
+	private int version;
+	private Simulation sim;
+	private SimulationEngine engine;
+
+	public SimulationReplayer(InputStream in) {
+		this.in = new DataInputStream(new BufferedInputStream(in));
+	}
+
+	/**
+	 * replay a log file
+	 * @param path
+	 * @return the simulation after the last recorded tick
+	 */
+	public static Simulation replay(Path path) throws IOException {
+		try (InputStream in = Files.newInputStream(path)) {
+			return new SimulationReplayer(in).replay();
+		}
+	}
+
+	/**
+	 * replay the whole log, an unfinished log is replayed up to its last command
+	 * @return the simulation after the last recorded tick
+	 */
+	public Simulation replay() throws IOException {
+		readHeader();
+		long tick = 0;
+		for (;;) {
+			int op;
+			try {
+				op = in.readUnsignedByte();
+			} catch (EOFException e) {
+				return sim; // the recorded run didn't stop
+			}
+			if (op >= Command.values().length)
+				throw new IOException("corrupt log: unknown command " + op);
+			Command command = Command.values()[op];
+			tick += readVarLong();
+
+			switch (command) {
+				case START:
+					long seed = in.readLong();
+					int maxGridX = in.readInt();
+					int maxGridY = in.readInt();
+					if (maxGridX != sim.getMaxGridX() || maxGridY != sim.getMaxGridY())
+						sim.setOceanSize(maxGridX, maxGridY);
+					int depots = (version >= 2) ? in.readInt() : 0;
+					int[] depotX = new int[depots];
+					int[] depotY = new int[depots];
+					for (int d = 0; d < depots; d++) {
+						depotX[d] = in.readInt();
+						depotY[d] = in.readInt();
+					}
+					sim.setDepots(depotX, depotY);
+					sim.setDiffusion((version >= 3) ? Simulation.Diffusion.values()[in.readUnsignedByte()] : Simulation.Diffusion.EDGE);
+					sim.setSeed(seed);
+					engine = new SimulationEngine(sim);
+					engine.start();
+					tick = 0;
+					break;
+				case END:
+					stepTo(tick);
+					sim.stop();
+					return sim;
+				default:
+					int arg = (command == Command.WIND || command == Command.CLEAN_MODE) ? in.readUnsignedByte() : 0;
+					stepTo(tick);
+					sim.apply(command, arg);
+			}
+		}
+	}
+
+	private void readHeader() throws IOException {
+		if (in.readInt() != SimulationRecorder.MAGIC)
+			throw new IOException("not a simulation log");
+		version = in.readShort();
+		if (version < 1 || version > SimulationRecorder.VERSION)
+			throw new IOException("unsupported log version: " + version);
+		String className = in.readUTF();
+		int maxGridX = in.readInt();
+		int maxGridY = in.readInt();
+		int cleanMode = in.readUnsignedByte();
+		long randomState = in.readLong();
+
+		sim = newSimulation(className);
+		sim.setOceanSize(maxGridX, maxGridY);
+		sim.setCleanMode(ABRule.CleanMode.values()[cleanMode]);
+		sim.random.setState(randomState); // for the commands before the start
+	}
+
+	/**
+	 * run the ticks up to the given tick, nothing before the start
+	 */
+	private void stepTo(long tick) {
+		if (engine != null && tick > engine.getTick())
+			engine.step(tick - engine.getTick());
+	}
+
+	private static Simulation newSimulation(String className) throws IOException {
+		try {
+			return Simulation.newInstance(className);
+		} catch (ReflectiveOperationException | ClassCastException e) {
+			throw new IOException("unknown simulation: " + className, e);
+		}
+	}
+
+	private long readVarLong() throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("corrupt log: varint too long");
+	}
+}
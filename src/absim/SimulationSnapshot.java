@@ -0,0 +1,179 @@
+/*
+ * Copyright All rights reserved.
+ * File: SimulationSnapshot.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.util.Arrays;
+
+import absim.SimulationThread.Direction;
+
+/**
+ * An immutable copy of the state of a Simulation after one change (a tick or a UI action).
+ * The simulation publishes a new snapshot by replacing a volatile reference,
+ * so observers such as the canvas read it without locks, on any thread,
+ * while the simulation thread already works on the next tick.
+ * The boats are copies of the fleet's parallel primitive arrays, in fleet order.
+ * @author Mon-Hong Shen
+ */
+public final class SimulationSnapshot {
+
+	private final boolean beforeStarting;
+	private final boolean running;
+	private final boolean paused;
+	private final boolean done;
+	private final long tick;
+	private final long cleanTick;
+	private final int maxGridX;
+	private final int maxGridY;
+	private final Direction wind;
+	private final int maxDarkerFlg;
+	private final int maxWindIntensityFlg;
+	private final int maxWindDirectionFlg;
+	private final OilSnapshot oil; // null if the simulation has no oil field yet
+	// boats
+	private final int boatCount;
+	private final int[] boatNumbers;
+	private final byte[] boatStatus;
+	private final int[] boatX;
+	private final int[] boatY;
+	private final double[] boatDirection;
+	private final boolean[] boatMoving;
+	private final int[] boatLoadUsg;
+	private final int[] boatLoadCap;
+	private final int[] boatBattUsg;
+	private final int[] boatBattCap;
+
+	/**
+	 * copy the state of sim, called by the thread owning the simulation
+	 * @param sim
+	 */
+	SimulationSnapshot(Simulation sim) {
+		this.beforeStarting = sim.isBeforeStarting();
+		this.running = sim.isRunning();
+		this.paused = sim.isPaused();
+		this.done = sim.isDone();
+		this.tick = sim.tick;
+		this.cleanTick = sim.cleanTick;
+		this.maxGridX = sim.maxGridX;
+		this.maxGridY = sim.maxGridY;
+		this.wind = sim.wind;
+		this.maxDarkerFlg = sim.maxDarkerFlg;
+		this.maxWindIntensityFlg = sim.maxWindIntensityFlg;
+		this.maxWindDirectionFlg = sim.maxWindDirectionFlg;
+		this.oil = (sim.oilField == null) ? null : sim.oilField.snapshot();
+
+		Fleet fleet = sim.fleet;
+		boatCount = fleet.size();
+		boatNumbers = Arrays.copyOf(fleet.number, boatCount);
+		boatStatus = Arrays.copyOf(fleet.status, boatCount);
+		boatX = Arrays.copyOf(fleet.x, boatCount);
+		boatY = Arrays.copyOf(fleet.y, boatCount);
+		boatDirection = Arrays.copyOf(fleet.direction, boatCount);
+		boatMoving = Arrays.copyOf(fleet.speed, boatCount);
+		boatLoadUsg = Arrays.copyOf(fleet.loadUsg, boatCount);
+		boatLoadCap = Arrays.copyOf(fleet.loadCap, boatCount);
+		boatBattUsg = Arrays.copyOf(fleet.battUsg, boatCount);
+		boatBattCap = Arrays.copyOf(fleet.battCap, boatCount);
+	}
+
+	/**
+	 * @return true if the simulation thread wasn't started yet (or has finished)
+	 */
+	public boolean isBeforeStarting() {
+		return beforeStarting;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public boolean isPaused() {
+		return paused;
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * @return true if running and not done, see SimulationThread.isPausable()
+	 */
+	public boolean isPausable() {
+		return running && !done;
+	}
+
+	public long getTick() {
+		return tick;
+	}
+
+	public long getCleanTick() {
+		return cleanTick;
+	}
+
+	public int getMaxGridX() {
+		return maxGridX;
+	}
+
+	public int getMaxGridY() {
+		return maxGridY;
+	}
+
+	public Direction getWind() {
+		return wind;
+	}
+
+	public int getMaxDarkerFlg() {
+		return maxDarkerFlg;
+	}
+
+	public int getWindIntensityFlg() {
+		return maxWindIntensityFlg;
+	}
+
+	public int getMaxWindDirectionFlg() {
+		return maxWindDirectionFlg;
+	}
+
+	/**
+	 * @return the oil grids, or null if the simulation has no oil field yet
+	 */
+	public OilSnapshot getOil() {
+		return oil;
+	}
+
+	/**
+	 * @return the number of remaining oil grids
+	 */
+	public int getOilCount() {
+		return (oil == null) ? 0 : oil.size();
+	}
+
+	public int getBoatCount() {
+		return boatCount;
+	}
+
+	public String getBoatName(int i) {
+		return Fleet.nameOf(boatNumbers[i]);
+	}
+
+	public int getBoatX(int i) {
+		return boatX[i];
+	}
+
+	public int getBoatY(int i) {
+		return boatY[i];
+	}
+
+	/**
+	 * @return the same text as Boat.toString() at the time of the snapshot
+	 */
+	public String describeBoat(int i) {
+		return Boat.describe(Fleet.statusName(boatStatus[i]), getBoatName(i), boatX[i], boatY[i], boatDirection[i], boatMoving[i]
+				, boatLoadUsg[i], boatLoadCap[i], boatBattUsg[i], boatBattCap[i]);
+	}
+}
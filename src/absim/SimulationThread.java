@@ -8,30 +8,85 @@
  */
 package absim;
 
-import java.util.Observable;
+import java.util.concurrent.locks.LockSupport;
+
+import absim.SimulationRecorder.Command;
 
 /**
  * This abstract class is only display the Simulation's Thread code.
- * Others such as boatList and oilGridList, 
+ * Others such as the fleet and oilField, 
  * Please see the subclass Simulation.java.
  * @author Mon-Hong Shen
  */
-public abstract class SimulationThread extends Observable implements Runnable {
+public abstract class SimulationThread implements Runnable {
 
 	/////// for Thread  ///////
-	private Thread thread = null; // the thread that runs my simulation
-	private boolean paused = false;
-	private boolean done = false; // set true to end the simulation loop
-	private boolean running = false; // set true if the simulation is running
-	private long simDelay = 100L; // time adjustment to slow down the simulation loop
+	// read by other threads, e.g. when a snapshot is published
+	private volatile Thread thread = null; // the thread that runs my simulation
+	private volatile boolean paused = false;
+	private volatile boolean done = false; // set true to end the simulation loop
+	private volatile boolean running = false; // set true if the simulation is running
+	// tick scheduling, can be changed while running
+	private volatile long simDelay = 100L; // the tick period in millis at 1x
+	private volatile double timeWarp = 1;  // N times faster than simDelay
+	private volatile boolean unthrottled;  // as many ticks as possible
+	// the simulation thread and the UI both change the simulation, one at a time.
+	// observers never take it, they read the published snapshot.
+	private final Object lock = new Object();
 	public enum Direction { NORTH, SOUTH, EAST, WEST, NO; }
 
+	/**
+	 * @return the lock held while the simulation changes, e.g. to copy it between two ticks
+	 */
+	final Object getLock() {
+		return lock;
+	}
+
     /**
-     * Allow for external control of the periodic simulation thread delay
-     * @param simDelay the time in millis to delay on each cycle (i.e. 500L = 0.5 seconds0
+     * Allow for external control of the periodic simulation thread delay,
+     * takes effect immediately, also while running
+     * @param simDelay the tick period in millis (i.e. 500L = 0.5 seconds), 0=no delay
      */
 	public void setSimDelay(long simDelay) {
+		if (simDelay < 0)
+			throw new IllegalArgumentException("invalid delay: " + simDelay);
 		this.simDelay = simDelay;
+		wakeUp();
+	}
+	
+	/**
+	 * run the ticks N times faster than simDelay, e.g. 2 = twice the tick rate
+	 * @param timeWarp greater than 0
+	 */
+	public void setTimeWarp(double timeWarp) {
+		if (!(timeWarp > 0) || Double.isInfinite(timeWarp))
+			throw new IllegalArgumentException("invalid time warp: " + timeWarp);
+		this.timeWarp = timeWarp;
+		wakeUp();
+	}
+	
+	public double getTimeWarp() {
+		return timeWarp;
+	}
+	
+	/**
+	 * @param unthrottled true to run the ticks back to back, ignoring simDelay and timeWarp
+	 */
+	public void setUnthrottled(boolean unthrottled) {
+		this.unthrottled = unthrottled;
+		wakeUp();
+	}
+	
+	public boolean isUnthrottled() {
+		return unthrottled;
+	}
+	
+	/**
+	 * @return the time between the starts of two ticks, 0=unthrottled
+	 */
+	public long getTickPeriodNanos() {
+		if (unthrottled) return 0;
+		return (long) (simDelay * 1_000_000L / timeWarp);
 	}
 	
 	/**
@@ -93,29 +148,57 @@ public abstract class SimulationThread extends Observable implements Runnable {
 	}
 	
 	/**
-	 * A simulation loop that continuously runs
+	 * A simulation loop that continuously runs.
+	 * The ticks start at a fixed rate: the next tick is due one period after
+	 * the start of the last one, not after its end, so the update time doesn't add up.
+	 * An interrupt ends the loop.
 	 */
     private void runSimLoop() {
     	running = true;
+    	long tickStart = System.nanoTime();
     	while(!done) {
-    		// do some simulation work
-    		if (!paused)
+    		if (paused) {
+    			LockSupport.park(this); // no CPU until resumed or stopped
+    			tickStart = System.nanoTime();
+    		} else {
+    			// do some simulation work
     		    updateSim();
-    		sleep(simDelay); // A half second sleep is the default
+    		    tickStart = awaitNextTick(tickStart);
+    		}
+    		if (Thread.interrupted())
+    			done = true;
     	}
     	running = false;
     }
     
 	/**
-	 * Make the current thread sleep a little
-	 * @param millis the time to sleep before the thread may re-awaken
+	 * park until the next tick is due, the period is read again when woken up
+	 * @param tickStart the start of the last tick
+	 * @return the start of the next tick
 	 */
-    private void sleep(long millis) {
-    	try {
-			Thread.sleep(millis);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+    private long awaitNextTick(long tickStart) {
+    	for (;;) {
+    		long period = getTickPeriodNanos();
+    		long now = System.nanoTime();
+    		if (period == 0) return now;
+    		
+    		long next = tickStart + period;
+    		if (now - next >= 0) {
+    			// late: run now, but don't burst to catch up more than one tick
+    			return (now - next > period) ? now : next;
+    		}
+    		if (done || paused || Thread.currentThread().isInterrupted()) return now;
+    		LockSupport.parkNanos(this, next - now);
+    	}
+    }
+    
+    /**
+     * let the simulation thread see a change of the schedule, pause or done at once
+     */
+    private void wakeUp() {
+    	Thread t = thread;
+    	if (t != null)
+    		LockSupport.unpark(t);
     }
 	
 	
@@ -132,7 +215,9 @@ public abstract class SimulationThread extends Observable implements Runnable {
 		paused = false;
 		done = false; // reset the done flag.
 		
-		start();
+		synchronized (lock) {
+			start();
+		}
 		
 		thread.start();
 	}
@@ -147,10 +232,13 @@ public abstract class SimulationThread extends Observable implements Runnable {
 	 * Force an early stop of the simulation by setting done = true
 	 */
 	public void stopSim() {
-		stop();
+		synchronized (lock) {
+			stop();
+		}
 		
 		if (thread == null) return; // defensive coding in case the thread is null
 		done = true;
+		wakeUp();
 		customNotifyObservers("Stop the simulation");
 	}
 	
@@ -164,6 +252,7 @@ public abstract class SimulationThread extends Observable implements Runnable {
 	 */
 	public void pauseSim() {
 		paused = !paused;
+		wakeUp();
 		customNotifyObservers("Pause the simulation: " + paused);
 	}
 	
@@ -171,7 +260,9 @@ public abstract class SimulationThread extends Observable implements Runnable {
      * Perform an update on my simulation
      */
 	public void updateSim() {
-    	update();
+		synchronized (lock) {
+			update();
+		}
     	customNotifyObservers();
     }
 	
@@ -185,7 +276,10 @@ public abstract class SimulationThread extends Observable implements Runnable {
      * change a wind's direction by UI
      */
 	public void changeDirectionSim(Direction wind) {
-		changeDirection(wind);
+		synchronized (lock) {
+			changeDirection(wind);
+			recordCommand(Command.WIND, wind.ordinal());
+		}
 		customNotifyObservers();
 	}
 	
@@ -198,7 +292,10 @@ public abstract class SimulationThread extends Observable implements Runnable {
 	 * new a boat from button by UI
 	 */
 	public void newBoatSim() {
-		newBoatToList();
+		synchronized (lock) {
+			newBoatToList();
+			recordCommand(Command.NEW_BOAT, 0);
+		}
 		customNotifyObservers();
 	}
 	
@@ -211,7 +308,10 @@ public abstract class SimulationThread extends Observable implements Runnable {
 	 * clear
 	 */
 	public void clearBoatSim() {
-		clearBoatList();
+		synchronized (lock) {
+			clearBoatList();
+			recordCommand(Command.CLEAR_BOATS, 0);
+		}
 		customNotifyObservers();
 	}
 	
@@ -224,7 +324,10 @@ public abstract class SimulationThread extends Observable implements Runnable {
 	 * new a oil grid from button by UI
 	 */
 	public void newOilGridSim() {
-		addOilGrid();
+		synchronized (lock) {
+			addOilGrid();
+			recordCommand(Command.NEW_OIL, 0);
+		}
 		customNotifyObservers();
 	}
 	
@@ -237,7 +340,10 @@ public abstract class SimulationThread extends Observable implements Runnable {
 	 * clear OilGrid from button by UI
 	 */
 	public void clearOilGridSim() {
-		clearOilGridList();
+		synchronized (lock) {
+			clearOilGridList();
+			recordCommand(Command.CLEAR_OIL, 0);
+		}
 		customNotifyObservers();
 	}
 	
@@ -247,7 +353,7 @@ public abstract class SimulationThread extends Observable implements Runnable {
 	protected abstract void clearOilGridList();
 	
 	/**
-	 * my notify Observer (MyCanvas.java) for not printing message
+	 * publish the state to the subscribers (MyCanvas.java) for not printing message
 	 * (simplify the codes)
 	 */
 	private void customNotifyObservers() {
@@ -255,12 +361,23 @@ public abstract class SimulationThread extends Observable implements Runnable {
 	}
 	
 	/**
-	 * my notify Observer (MyCanvas.java) for printing message
+	 * record an external command, applied between two ticks, for a replay
+	 */
+	protected abstract void recordCommand(Command command, int arg);
+	
+	/**
+	 * Actual behavior of publishing the state to the subscribers, never waits for them
+	 */
+	protected abstract void publish();
+	
+	/**
+	 * publish the state to the subscribers (MyCanvas.java) for printing message
 	 * (simplify the codes)
 	 */
 	private void customNotifyObservers(String msg) {
-    	setChanged();
-    	notifyObservers(this); // Send a copy of the simulation
+		synchronized (lock) {
+			publish(); // Send a copy of the simulation
+		}
     	if (!"".equals(msg))
     		System.out.println(msg);
 	}
@@ -8,8 +8,6 @@
  */
 package absim;
 
-import java.util.LinkedList;
-
 /**
  * This is a actual simulation for boats and oilGrids
  * Simple-One Boat, Random Wind
@@ -17,18 +15,16 @@ import java.util.LinkedList;
  */
 public final class SimulationType0 extends Simulation {
 	@Override
-	public void start() {
+	protected void initFactors() {
 		maxAutoGenBostFlg = 0; // one boat
 		maxWindDirectionFlg = 15; // random wind's direction
 		
-		if (boatList == null) 
-    		boatList = new LinkedList<>();
-    	boatList.clear();
-    	boatList.add(new Boat(MAX_GRID, MAX_GRID));
+    	fleet.clear();
+    	newBoatToList();
     	
-    	if (oilGridList == null)
-			oilGridList = new LinkedList<>();
-		oilGridList.clear();
+    	if (oilField == null)
+			oilField = newOilField();
+		oilField.clear();
 		for (int i=0; i<maxOilGridCountFlg; i++)
 			addOilGrid();    	
 	}
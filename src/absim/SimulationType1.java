@@ -8,8 +8,6 @@
  */
 package absim;
 
-import java.util.LinkedList;
-
 /**
  * This is a actual simulation for boats and oilGrids
  * Manual-Auto Generating Boats, Change Wind by Hand
@@ -17,18 +15,16 @@ import java.util.LinkedList;
  */
 public final class SimulationType1 extends Simulation {
 	@Override
-	public void start() {
+	protected void initFactors() {
 		maxAutoGenBostFlg = 50; // auto generate boats
 		maxWindDirectionFlg = 0; // constant wind
 		
-		if (boatList == null) 
-    		boatList = new LinkedList<>();
-    	boatList.clear();
-    	boatList.add(new Boat(MAX_GRID, MAX_GRID));
+    	fleet.clear();
+    	newBoatToList();
     	
-    	if (oilGridList == null)
-			oilGridList = new LinkedList<>();
-		oilGridList.clear();
+    	if (oilField == null)
+			oilField = newOilField();
+		oilField.clear();
 		for (int i=0; i<maxOilGridCountFlg; i++)
 			addOilGrid();    	
 	}
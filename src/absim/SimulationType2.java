@@ -8,8 +8,6 @@
  */
 package absim;
 
-import java.util.LinkedList;
-
 /**
  * This is a actual simulation for boats and oilGrids
  * Manual -you can setting wind's direction, add oilGrids, add boats by yourself.
@@ -18,15 +16,12 @@ import java.util.LinkedList;
  */
 public final class SimulationType2 extends Simulation {
 	@Override
-	public void start() {
+	protected void initFactors() {
 		maxAutoGenBostFlg = 0; // initialize one boat 
 		maxWindDirectionFlg = 0; // constant wind
 		
-		if (boatList == null) 
-    		boatList = new LinkedList<>();
-    	
-    	if (oilGridList == null)
-			oilGridList = new LinkedList<>();
+    	if (oilField == null)
+			oilField = newOilField();
     	
 	}
 }
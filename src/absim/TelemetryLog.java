@@ -0,0 +1,194 @@
+/*
+ * Copyright All rights reserved.
+ * File: TelemetryLog.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import absim.SimulationMetrics.Phase;
+import absim.SimulationThread.Direction;
+
+/**
+ * Per-tick telemetry of a simulation, appended into a preallocated memory-mapped file.
+ * Attach it with Simulation.setTelemetry(), every tick adds one record:
+ * tick, oil grids, moving / charging / unloading / returning boats, wind, and the nanoseconds of every tick phase.
+ * Appending only writes into the mapped buffer, nothing is allocated per tick.
+ * When the file is full the next records are only counted as dropped.
+ *
+ * Format (big endian), fixed-width columns, each column is one contiguous array of capacity values:
+ *   header: int MAGIC, short VERSION, short COLUMNS, int capacity, int count, long dropped
+ *   then the columns in the order of COLUMN_NAMES, column c starts at
+ *   HEADER_BYTES + capacity * (sum of the widths before c).
+ * The count in the header is updated after every record, so the file can be read while written.
+ * @author Mon-Hong Shen
+ */
+public final class TelemetryLog implements Closeable {
+
+	static final int MAGIC = 0x4142544C; // "ABTL"
+	static final short VERSION = 2;
+	static final int HEADER_BYTES = 4 + 2 + 2 + 4 + 4 + 8;
+	private static final int COUNT_OFFSET = 12;
+	private static final int DROPPED_OFFSET = 16;
+
+	// columns
+	private static final String[] COLUMN_NAMES = { "tick", "oil", "moving", "charging", "unloading", "returning", "wind",
+			"spawnNanos", "oilNanos", "windNanos", "dispatchNanos", "distanceNanos", "boatsNanos" };
+	private static final int[] COLUMN_WIDTHS = { 8, 4, 4, 4, 4, 4, 1, 8, 8, 8, 8, 8, 8 };
+	private static final int TICK = 0, OIL = 1, MOVING = 2, CHARGING = 3, UNLOADING = 4, RETURNING = 5, WIND = 6,
+			SPAWN_NANOS = 7, OIL_NANOS = 8, WIND_NANOS = 9, DISPATCH_NANOS = 10, DISTANCE_NANOS = 11, BOATS_NANOS = 12;
+	static final int RECORD_BYTES = 77; // sum of COLUMN_WIDTHS
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final int[] columnOffsets = new int[COLUMN_WIDTHS.length];
+	private int count;
+	private long dropped;
+
+	private TelemetryLog(FileChannel channel, int capacity) throws IOException {
+		this.channel = channel;
+		this.capacity = capacity;
+		int offset = HEADER_BYTES;
+		for (int c = 0; c < COLUMN_WIDTHS.length; c++) {
+			columnOffsets[c] = offset;
+			offset += capacity * COLUMN_WIDTHS[c];
+		}
+		this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, offset);
+		buffer.putInt(0, MAGIC);
+		buffer.putShort(4, VERSION);
+		buffer.putShort(6, (short) COLUMN_NAMES.length);
+		buffer.putInt(8, capacity);
+		buffer.putInt(COUNT_OFFSET, 0);
+		buffer.putLong(DROPPED_OFFSET, 0);
+	}
+
+	/**
+	 * create a log file (replacing an existing one)
+	 * @param path
+	 * @param capacity the ticks recorded at most
+	 */
+	public static TelemetryLog create(Path path, int capacity) throws IOException {
+		if (capacity <= 0 || capacity > (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES)
+			throw new IllegalArgumentException("invalid capacity: " + capacity);
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			return new TelemetryLog(channel, capacity);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the records written
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the records not written because the file was full
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * append the record of one tick
+	 * @param metrics the phase nanoseconds of the tick
+	 * @return false if the file is full
+	 */
+	boolean append(long tick, int oil, int moving, int charging, int unloading, int returning, Direction wind, SimulationMetrics metrics) {
+		if (count == capacity) {
+			buffer.putLong(DROPPED_OFFSET, ++dropped);
+			return false;
+		}
+		int i = count;
+		buffer.putLong(columnOffsets[TICK] + i * 8, tick);
+		buffer.putInt(columnOffsets[OIL] + i * 4, oil);
+		buffer.putInt(columnOffsets[MOVING] + i * 4, moving);
+		buffer.putInt(columnOffsets[CHARGING] + i * 4, charging);
+		buffer.putInt(columnOffsets[UNLOADING] + i * 4, unloading);
+		buffer.putInt(columnOffsets[RETURNING] + i * 4, returning);
+		buffer.put(columnOffsets[WIND] + i, (byte) wind.ordinal());
+		buffer.putLong(columnOffsets[SPAWN_NANOS] + i * 8, metrics.getLastNanos(Phase.SPAWN));
+		buffer.putLong(columnOffsets[OIL_NANOS] + i * 8, metrics.getLastNanos(Phase.DARKER) + metrics.getLastNanos(Phase.DIFFUSE));
+		buffer.putLong(columnOffsets[WIND_NANOS] + i * 8, metrics.getLastNanos(Phase.WIND));
+		buffer.putLong(columnOffsets[DISPATCH_NANOS] + i * 8, metrics.getLastNanos(Phase.DISPATCH));
+		buffer.putLong(columnOffsets[DISTANCE_NANOS] + i * 8, metrics.getLastNanos(Phase.DISTANCE));
+		buffer.putLong(columnOffsets[BOATS_NANOS] + i * 8, metrics.getLastNanos(Phase.BOATS));
+		buffer.putInt(COUNT_OFFSET, ++count);
+		return true;
+	}
+
+	/**
+	 * flush the records to the file
+	 */
+	@Override
+	public void close() throws IOException {
+		buffer.force();
+		channel.close();
+	}
+
+	/**
+	 * convert a log file to CSV: a header line with the column names, then one line per tick
+	 * @param path the log file
+	 * @param out
+	 * @return the ticks dropped because the log was full
+	 */
+	public static long writeCsv(Path path, Appendable out) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (in.remaining() < HEADER_BYTES || in.getInt(0) != MAGIC)
+				throw new IOException("not a telemetry log: " + path);
+			short version = in.getShort(4);
+			if (version != VERSION)
+				throw new IOException("unsupported telemetry version: " + version);
+			long capacity = in.getInt(8);
+			int count = in.getInt(COUNT_OFFSET);
+			if (in.getShort(6) != COLUMN_NAMES.length || count > capacity
+					|| in.limit() < HEADER_BYTES + capacity * RECORD_BYTES)
+				throw new IOException("corrupt telemetry log: " + path);
+
+			int[] offsets = new int[COLUMN_WIDTHS.length];
+			long offset = HEADER_BYTES;
+			for (int c = 0; c < COLUMN_WIDTHS.length; c++) {
+				offsets[c] = (int) offset;
+				offset += capacity * COLUMN_WIDTHS[c];
+			}
+
+			out.append(String.join(",", COLUMN_NAMES)).append('\n');
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < count; i++) {
+				line.setLength(0);
+				for (int c = 0; c < COLUMN_WIDTHS.length; c++) {
+					if (c > 0) line.append(',');
+					int at = offsets[c] + i * COLUMN_WIDTHS[c];
+					switch (COLUMN_WIDTHS[c]) {
+						case 1: line.append(Direction.values()[in.get(at)]); break;
+						case 4: line.append(in.getInt(at)); break;
+						default: line.append(in.getLong(at));
+					}
+				}
+				out.append(line).append('\n');
+			}
+			return in.getLong(DROPPED_OFFSET);
+		}
+	}
+}
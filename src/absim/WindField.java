@@ -0,0 +1,159 @@
+/*
+ * Copyright All rights reserved.
+ * File: WindField.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package absim;
+
+import java.nio.ByteBuffer;
+
+import absim.SimulationThread.Direction;
+
+/**
+ * A wind vector per region of REGION x REGION grids, varying slowly over time:
+ * every VARY_TICKS ticks vary() turns each region a little towards the prevailing wind of the simulation
+ * plus a gust of its own, and the gust itself wanders a little at random,
+ * so the regions differ and the differences last a while.
+ * A vector (u, v) is in units of the full drift, u along x and v along y, |u| and |v| at most 1.
+ * The version changes only when a vector does, so ConcentrationField rebuilds its stencils only then
+ * and the ticks in between reuse them.
+ * @author Mon-Hong Shen
+ */
+public final class WindField {
+
+	public static final int REGION_SHIFT = 6;
+	public static final int REGION = 1 << REGION_SHIFT; // 64 x 64 grids
+	public static final int VARY_TICKS = 10; // ticks between two vary()
+	static final float FOLLOW = 0.2f;  // of the way to the prevailing wind, per vary()
+	static final float GUST = 0.5f;    // largest gust of a region
+	static final float GUST_STEP = 0.15f; // largest change of a gust, per vary()
+
+	private final int regionsX;
+	private final int regionsY;
+	private final float[] u;
+	private final float[] v;
+	private final float[] gustU;
+	private final float[] gustV;
+	private int version;
+
+	/**
+	 * a calm wind field
+	 * @param width the ocean's grids from 0 to width-1
+	 * @param height
+	 */
+	public WindField(int width, int height) {
+		this.regionsX = (width + REGION - 1) >>> REGION_SHIFT;
+		this.regionsY = (height + REGION - 1) >>> REGION_SHIFT;
+		this.u = new float[regionsX * regionsY];
+		this.v = new float[regionsX * regionsY];
+		this.gustU = new float[regionsX * regionsY];
+		this.gustV = new float[regionsX * regionsY];
+	}
+
+	public int getRegionsX() {
+		return regionsX;
+	}
+
+	public int getRegionsY() {
+		return regionsY;
+	}
+
+	public int regionOf(int x, int y) {
+		return (y >>> REGION_SHIFT) * regionsX + (x >>> REGION_SHIFT);
+	}
+
+	public float getU(int region) {
+		return u[region];
+	}
+
+	public float getV(int region) {
+		return v[region];
+	}
+
+	/**
+	 * @return changes with every change of a vector, not of a gust
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * set the vector of a region
+	 */
+	public void set(int region, float u, float v) {
+		if (setVector(region, clamp(u), clamp(v)))
+			version++;
+	}
+
+	/**
+	 * turn every region a little towards the prevailing wind and its gust, then let the gust wander
+	 * @param prevailing drifts like the edge diffusion: WEST=x+, EAST=x-, NORTH=y+, SOUTH=y-
+	 * @param random the random numbers of the simulation
+	 */
+	public void vary(Direction prevailing, SimRandom random) {
+		float windU = (prevailing == Direction.WEST) ? 1f : (prevailing == Direction.EAST) ? -1f : 0f;
+		float windV = (prevailing == Direction.NORTH) ? 1f : (prevailing == Direction.SOUTH) ? -1f : 0f;
+		boolean changed = false;
+		for (int r = 0; r < u.length; r++) {
+			changed |= setVector(r, clamp(u[r] + FOLLOW * (windU + gustU[r] - u[r])),
+					clamp(v[r] + FOLLOW * (windV + gustV[r] - v[r])));
+			gustU[r] = wander(gustU[r], random);
+			gustV[r] = wander(gustV[r], random);
+		}
+		if (changed)
+			version++;
+	}
+
+	/**
+	 * @return true if the vector of the region changed
+	 */
+	private boolean setVector(int region, float u, float v) {
+		if (this.u[region] == u && this.v[region] == v) return false;
+		this.u[region] = u;
+		this.v[region] = v;
+		return true;
+	}
+
+	private static float wander(float gust, SimRandom random) {
+		float step = GUST_STEP * (random.nextInt(201) - 100) / 100f;
+		return Math.max(-GUST, Math.min(GUST, gust + step));
+	}
+
+	private static float clamp(float value) {
+		return Math.max(-1f, Math.min(1f, value));
+	}
+
+	long checkpointBytes() {
+		return 4*2 + 16L * u.length;
+	}
+
+	void writeTo(ByteBuffer out) {
+		out.putInt(regionsX);
+		out.putInt(regionsY);
+		for (int r = 0; r < u.length; r++) {
+			out.putFloat(u[r]);
+			out.putFloat(v[r]);
+			out.putFloat(gustU[r]);
+			out.putFloat(gustV[r]);
+		}
+	}
+
+	/**
+	 * read the vectors written by writeTo() into a field of the same ocean
+	 */
+	void readFrom(ByteBuffer in) {
+		if (in.getInt() != regionsX || in.getInt() != regionsY)
+			throw new IllegalArgumentException("wind field of another ocean size");
+		boolean changed = false;
+		for (int r = 0; r < u.length; r++) {
+			changed |= setVector(r, in.getFloat(), in.getFloat());
+			gustU[r] = in.getFloat();
+			gustV[r] = in.getFloat();
+		}
+		if (changed)
+			version++;
+	}
+}
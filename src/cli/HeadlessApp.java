@@ -0,0 +1,265 @@
+/*
+ * Copyright All rights reserved.
+ * File: HeadlessApp.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package cli;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import absim.ABRule.CleanMode;
+import absim.Checkpoint;
+import absim.Dispatcher;
+import absim.EnsembleRunner;
+import absim.EnsembleStats;
+import absim.Simulation;
+import absim.SimulationMetrics;
+import absim.SimulationMetrics.Phase;
+import absim.SimulationReplayer;
+import absim.SimulationType0;
+import absim.SimulationType1;
+import absim.SimulationType2;
+import absim.TelemetryLog;
+
+/**
+ * Run simulations from the command line, without Swing.
+ * usage: HeadlessApp [-replay FILE | -restore FILE] [-checkpoint FILE] [-telemetry FILE] [-csv FILE] [-jmx] [-metrics] [-depot X Y]... [-type 0|1|2] [-size X Y] [-runs N] [-threads N] [-seed S] [-ticks N | -maxTicks N] [-boatThreads N] [-envThreads N] [-cleanMode oldest|nearest|dispatched|gradient] [-diffusion edge|concentration|wind_field]
+ *   -runs     independent runs of the same scenario (an ensemble), summarized at the end
+ *   -threads  runs executed at the same time (default 1)
+ *   -seed     base seed of the runs, the same seed repeats the same runs (default random)
+ *   -replay   re-execute a run recorded by MyAppUI -record, -runs times (for benchmarking)
+ *   -checkpoint save the state of the simulation after the run into FILE (a single run)
+ *   -restore  the runs continue the state saved by -checkpoint, each with its own seed
+ *             (-type, -size, -boatThreads, -cleanMode, -depot and -diffusion come from the checkpoint)
+ *   -telemetry append per-tick records into FILE (a single run), room for -ticks or -maxTicks ticks
+ *   -csv      print a -telemetry FILE as CSV, nothing else is done
+ *   -jmx      register the metrics of every run in JMX while it runs (jconsole, absim)
+ *   -metrics  print the phase latencies of every run
+ *   -depot    boats travel to the nearest depot to recharge and unload (default in place),
+ *             repeat it for several depots, e.g. the port: -depot 100 100
+ *   -ticks    run exactly N ticks (or until clean)
+ *   -maxTicks run until clean, give up after N ticks (default)
+ *   -boatThreads move boats on N threads (default 0=serial)
+ *   -envThreads  update the oil concentrations on N threads (default 0=serial), -diffusion concentration or wind_field
+ *   -cleanMode   which oil grid a boat cleans next (default oldest)
+ *   -diffusion   how oil spreads (default edge)
+ * @author Mon-Hong Shen
+ */
+public class HeadlessApp {
+
+	private int simType = 0;
+	private int maxGridX = Simulation.DEFAULT_GRID;
+	private int maxGridY = Simulation.DEFAULT_GRID;
+	private int runs = 1;
+	private int threads = 1;
+	private long seed = ThreadLocalRandom.current().nextLong();
+	private long ticks = 0;
+	private long maxTicks = 1_000_000L;
+	private int boatThreads = 0;
+	private int envThreads = 0;
+	private CleanMode cleanMode = CleanMode.OLDEST;
+	private Path replay;
+	private Path checkpoint;
+	private Path restore;
+	private Path telemetryPath;
+	private Path csv;
+	private TelemetryLog telemetry;
+	private boolean jmx;
+	private boolean metrics;
+	private int[] depotX = new int[0];
+	private int[] depotY = new int[0];
+	private Simulation.Diffusion diffusion = Simulation.Diffusion.EDGE;
+
+	/**
+	 * parse the command line arguments
+	 * @param args
+	 */
+	private HeadlessApp(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-type":     simType  = Integer.parseInt(args[++i]); break;
+				case "-size":     maxGridX = Integer.parseInt(args[++i]);
+				                  maxGridY = Integer.parseInt(args[++i]); break;
+				case "-runs":     runs     = Integer.parseInt(args[++i]); break;
+				case "-threads":  threads  = Integer.parseInt(args[++i]); break;
+				case "-seed":     seed     = Long.parseLong(args[++i]);   break;
+				case "-ticks":    ticks    = Long.parseLong(args[++i]);   break;
+				case "-maxTicks": maxTicks = Long.parseLong(args[++i]);   break;
+				case "-boatThreads": boatThreads = Integer.parseInt(args[++i]); break;
+				case "-envThreads":  envThreads = Integer.parseInt(args[++i]); break;
+				case "-replay":   replay   = Paths.get(args[++i]);        break;
+				case "-checkpoint": checkpoint = Paths.get(args[++i]);    break;
+				case "-restore":  restore  = Paths.get(args[++i]);        break;
+				case "-telemetry": telemetryPath = Paths.get(args[++i]);  break;
+				case "-csv":      csv      = Paths.get(args[++i]);        break;
+				case "-jmx":      jmx      = true;                        break;
+				case "-metrics":  metrics  = true;                        break;
+				case "-depot":    depotX   = append(depotX, Integer.parseInt(args[++i]));
+				                  depotY   = append(depotY, Integer.parseInt(args[++i])); break;
+				case "-cleanMode":   cleanMode = CleanMode.valueOf(args[++i].toUpperCase()); break;
+				case "-diffusion":   diffusion = Simulation.Diffusion.valueOf(args[++i].toUpperCase()); break;
+				default: throw new IllegalArgumentException("unknown option: " + args[i]);
+			}
+		}
+	}
+
+	private static int[] append(int[] values, int value) {
+		int[] result = Arrays.copyOf(values, values.length + 1);
+		result[values.length] = value;
+		return result;
+	}
+
+	/**
+	 * new a simulation of the given type
+	 */
+	static Simulation newSimulation(int simType) {
+		switch (simType) {
+			case 0: return new SimulationType0();
+			case 1: return new SimulationType1();
+			case 2: return new SimulationType2();
+			default: throw new IllegalArgumentException("unknown simulation type: " + simType);
+		}
+	}
+
+	/**
+	 * a new simulation with the options of the command line, not started
+	 */
+	private Simulation newConfiguredSimulation() {
+		Simulation sim = newSimulation(simType);
+		sim.setOceanSize(maxGridX, maxGridY);
+		sim.setBoatParallelism(boatThreads);
+		sim.setEnvironmentParallelism(envThreads);
+		sim.setCleanMode(cleanMode);
+		sim.setDepots(depotX, depotY);
+		sim.setDiffusion(diffusion);
+		sim.setTelemetry(telemetry);
+		if (jmx)
+			sim.getMetrics().register();
+		return sim;
+	}
+
+	private void run() throws IOException {
+		if (csv != null) {
+			long dropped = TelemetryLog.writeCsv(csv, System.out);
+			if (dropped > 0)
+				System.err.println(dropped + " ticks missing, the telemetry log was full");
+			return;
+		}
+		if (replay != null) {
+			replay();
+			return;
+		}
+		if (checkpoint != null && runs != 1)
+			throw new IllegalArgumentException("-checkpoint needs a single run");
+		if (telemetryPath != null) {
+			if (runs != 1 || restore != null)
+				throw new IllegalArgumentException("-telemetry needs a single new run");
+			long capacity = ticks > 0 ? ticks : maxTicks;
+			telemetry = TelemetryLog.create(telemetryPath, (int) Math.min(capacity, 1L << 24));
+		}
+		System.out.printf("seed=%d, runs=%d, threads=%d%n", seed, runs, threads);
+		EnsembleRunner runner;
+		if (restore != null) {
+			long startTime = System.nanoTime();
+			Checkpoint warmStart = Checkpoint.read(restore);
+			warmStart.restore(); // fail early on a corrupt checkpoint
+			System.out.printf("restore: %d bytes, %.3f ms%n", warmStart.size(), (System.nanoTime() - startTime) / 1e6);
+			runner = new EnsembleRunner(warmStart, threads);
+		} else {
+			runner = new EnsembleRunner(this::newConfiguredSimulation, threads);
+		}
+		// -ticks stops a run after N ticks too, it only doesn't count as a limit
+		EnsembleStats stats = runner.run(runs, seed, ticks > 0 ? ticks : maxTicks, result -> {
+			result.getSimulation().getMetrics().unregister();
+			print(result);
+			if (checkpoint != null)
+				save(result.getSimulation());
+		});
+
+		if (runs > 1) {
+			System.out.printf("ensemble: runs=%d, clean=%d, time-to-clean mean=%.1f p50=%d p90=%d p99=%d max=%d ticks%n",
+					stats.getRuns(), stats.getCleanRuns(), stats.getMeanTimeToClean(),
+					stats.getTimeToCleanPercentile(50), stats.getTimeToCleanPercentile(90),
+					stats.getTimeToCleanPercentile(99), stats.getTimeToCleanPercentile(100));
+			System.out.printf("          boats used mean=%.1f p50=%d p90=%d max=%d%n",
+					stats.getMeanBoatsUsed(), stats.getBoatsUsedPercentile(50),
+					stats.getBoatsUsedPercentile(90), stats.getBoatsUsedPercentile(100));
+		}
+		if (telemetry != null) {
+			telemetry.close();
+			System.out.printf("telemetry: %d ticks, %s%n", telemetry.getCount(), telemetryPath);
+		}
+	}
+
+	/**
+	 * save the state of a finished run for -checkpoint
+	 */
+	private void save(Simulation sim) {
+		try {
+			long startTime = System.nanoTime();
+			Checkpoint.save(sim, checkpoint);
+			System.out.printf("checkpoint: tick=%d, %s, %.3f ms%n", sim.getTick(), checkpoint,
+					(System.nanoTime() - startTime) / 1e6);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * replay the recorded run, as many times as -runs
+	 */
+	private void replay() throws IOException {
+		for (int run = 1; run <= runs; run++) {
+			long startTime = System.nanoTime();
+			Simulation sim = SimulationReplayer.replay(replay);
+			long duration = System.nanoTime() - startTime;
+			
+			double seconds = duration / 1e9;
+			System.out.printf("replay %d: seed=%d, ticks=%d, ticks/sec=%.0f, time-to-clean=%s, oil=%d, boats=%d, duration=%.3f ms%n",
+					run, sim.getSeed(), sim.getTick(), sim.getTick() / Math.max(seconds, 1e-9),
+					sim.getCleanTick() < 0 ? "n/a" : sim.getCleanTick() + " ticks",
+					sim.getOilField() == null ? 0 : sim.getOilField().size(),
+					sim.getBoatList() == null ? 0 : sim.getBoatList().size(), duration / 1e6);
+		}
+	}
+
+	/**
+	 * print the result of one run
+	 */
+	private void print(EnsembleRunner.Result result) {
+		Simulation sim = result.getSimulation();
+		double seconds = result.getNanos() / 1e9;
+		System.out.printf("run %d: seed=%d, ticks=%d, ticks/sec=%.0f, time-to-clean=%s, oil=%d, boats=%d, duration=%.3f ms%n",
+				result.getRun(), result.getSeed(), result.getTicks(), result.getTicks() / Math.max(seconds, 1e-9),
+				result.getCleanTick() < 0 ? "n/a" : result.getCleanTick() + " ticks",
+				sim.getOilField().size(), result.getBoats(), result.getNanos() / 1e6);
+		if (sim.getCleanMode() == CleanMode.DISPATCHED) {
+			Dispatcher dispatcher = sim.getDispatcher();
+			System.out.printf("       assignments=%d, avg assign cost=%.2f, unassigned=%d, assign time=%.3f ms%n",
+					dispatcher.getAssignments(), dispatcher.getAverageAssignCost(),
+					dispatcher.getUnassigned(), dispatcher.getAssignNanos() / 1e6);
+		}
+		if (metrics) {
+			SimulationMetrics simMetrics = sim.getMetrics();
+			System.out.printf("       oil added=%d, removed=%d, boats spawned=%d%n",
+					simMetrics.getOilAdded(), simMetrics.getOilRemoved(), simMetrics.getBoatsSpawned());
+			for (Phase phase : Phase.values())
+				System.out.printf("       %-8s %s ns%n", phase.name().toLowerCase(), simMetrics.getLatency(phase));
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws IOException {
+		new HeadlessApp(args).run();
+	}
+}
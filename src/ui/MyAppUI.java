@@ -10,16 +10,21 @@ package ui;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
-import java.util.Observable;
-import java.util.Observer;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.logging.Logger;
 
 import javax.swing.JButton;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
-import absim.SimulationThread;
+import absim.EventBus;
+import absim.Simulation;
+import absim.SimulationRecorder;
+import absim.SimulationSnapshot;
 import absim.SimulationThread.Direction;
 import absim.SimulationType0;
 import absim.SimulationType1;
@@ -30,9 +35,10 @@ import net.java.dev.designgridlayout.DesignGridLayout;
  * This class is for showing every UI Components's behavior
  * @author Mon-Hong Shen
  */
-public class MyAppUI extends ABApp implements Observer {
+public class MyAppUI extends ABApp {
 
 	private static final Logger LOG = Logger.getLogger(MyAppUI.class.getName());
+	private static final long FRAME_MILLIS = 16; // at most ~60 frames per second, whatever the tick rate
 	private static final String[] ITEM = {"Simple-One Boat, Random Wind", "Manual-Auto Genertating Boats, Change Wind by Hand", "Manual"};
 	
 	// northPanel group
@@ -54,14 +60,28 @@ public class MyAppUI extends ABApp implements Observer {
 	private MyCanvas canvas;
 	
 	// Simulation
-	private SimulationThread mySim;
+	private Simulation mySim;
 	private int simType;
+	private EventBus.Subscription canvasSubscription;
+	private EventBus.Subscription uiSubscription;
+	// record the run for a replay, null=no recording
+	private final Path recordPath;
+	private SimulationRecorder recorder;
 	
 	/**
 	 * Constructor
 	 */
 	public MyAppUI() {
+		this(null);
+	}
+	
+	/**
+	 * Constructor
+	 * @param recordPath record the run into this file, null=no recording
+	 */
+	public MyAppUI(Path recordPath) {
 		LOG.info("MyAppUI started");
+		this.recordPath = recordPath;
 
 	 	frame.setSize(740, 750);
 		frame.setTitle("MyAppUI");
@@ -75,6 +95,9 @@ public class MyAppUI extends ABApp implements Observer {
 	 * Initialize the simulation
 	 */
 	private void initSim() {
+		if (canvasSubscription != null) canvasSubscription.cancel();
+		if (uiSubscription != null) uiSubscription.cancel();
+		if (mySim != null) mySim.getMetrics().unregister();
 		switch (simType) {
 			case 0: mySim = new SimulationType0(); break;
 			case 1: mySim = new SimulationType1(); break;
@@ -82,9 +105,32 @@ public class MyAppUI extends ABApp implements Observer {
 			default:
 		}
 		
-		// make the subscription
-		mySim.addObserver(canvas); // Allow the panel to hear about simulation events
-		mySim.addObserver(this);
+		// record the next run of this simulation
+		if (recordPath != null)
+			initRecorder();
+		
+		// watch the phase latencies with jconsole, under absim
+		mySim.getMetrics().register();
+		
+		// make the subscription, delivered on the Swing Dispatch thread
+		canvasSubscription = mySim.getEvents().subscribe(canvas::update, SwingUtilities::invokeLater, FRAME_MILLIS);
+		uiSubscription = mySim.getEvents().subscribe(this::update, SwingUtilities::invokeLater, 0);
+	}
+
+	/**
+	 * record the run of the current simulation, replacing the last recording
+	 */
+	private void initRecorder() {
+		try {
+			if (recorder != null)
+				recorder.close();
+			recorder = SimulationRecorder.open(recordPath);
+			mySim.setRecorder(recorder);
+			LOG.info("recording to " + recordPath);
+		} catch (IOException e) {
+			LOG.warning("can't record to " + recordPath + ": " + e);
+			recorder = null;
+		}
 	}
 
 	/**
@@ -255,30 +301,28 @@ public class MyAppUI extends ABApp implements Observer {
 	public void actionPerformed(ActionEvent e) {}
 
 	/**
-	 * get value from Simulation
+	 * get value from Simulation, on the Swing Dispatch thread
 	 */
-	@Override
-	public void update(Observable o, Object arg) {
-		if (arg instanceof SimulationThread) {
-			mySim = (SimulationThread) arg;
-			
-			comboBox.setEnabled(!mySim.isRunning());
-			startBtn.setEnabled(mySim.isBeforeStarting() || mySim.isDone());
-			pauseBtn.setEnabled(mySim.isPausable());
-			stopBtn.setEnabled(!mySim.isPaused());
-			
-			// if thread is stopped
-			if (mySim.isDone())
-				resetEnableBtns();
-		}
+	private void update(SimulationSnapshot snapshot) {
+		comboBox.setEnabled(!snapshot.isRunning());
+		startBtn.setEnabled(snapshot.isBeforeStarting() || snapshot.isDone());
+		pauseBtn.setEnabled(snapshot.isPausable());
+		stopBtn.setEnabled(!snapshot.isPaused());
+		
+		// if thread is stopped
+		if (snapshot.isDone())
+			resetEnableBtns();
 	}
 	
 	/**
 	 * initial myApp
-	 * @param args
+	 * @param args [-record FILE] to record the run for HeadlessApp -replay
 	 */
 	public static void main(String[] args) {
-		new MyAppUI();
+		Path recordPath = null;
+		if (args.length == 2 && "-record".equals(args[0]))
+			recordPath = Paths.get(args[1]);
+		new MyAppUI(recordPath);
 		System.out.println("MyAppUI is exiting !!!!!!!!!!!!!!");
 	}
 
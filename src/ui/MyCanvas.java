@@ -13,28 +13,27 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.util.LinkedList;
-import java.util.Observable;
-import java.util.Observer;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 
-import absim.Boat;
-import absim.OceanGrid;
 import absim.Simulation;
+import absim.SimulationSnapshot;
 import absim.SimulationThread.Direction;
 
 /**
  * draw in the central panel
  * @author Mon-Hong Shen
  */
-public class MyCanvas extends JPanel implements Observer {
+public class MyCanvas extends JPanel {
 
 	private static final long serialVersionUID = 1L;
 	private static final int BOAT_SIZE = 15;
 	private static final int DESC_HEIGHT = 3;
 	private static final Color LAND_CLR = new Color(34, 139, 34); // green land
 	private static final Color OCEAN_CLR = new Color(30, 144, 255); // blue ocean
+	private static final Font FONT = new Font("default", Font.BOLD, 12);
 	
 	private Dimension size;
 	private int halfWidth;
@@ -43,13 +42,18 @@ public class MyCanvas extends JPanel implements Observer {
 	private int gridHeight;
 	private int edgeX;
 	private int edgeY;
-	private Simulation mySim;
-	private LinkedList<OceanGrid> oilGridList;
-	private LinkedList<Boat> boatList;
-	private Direction wind;
-	private int maxDarkerFlg;
-	private int maxWindIntensityFlg;
-	private int maxWindDirectionFlg;
+	private int maxGridX = Simulation.DEFAULT_GRID;
+	private int maxGridY = Simulation.DEFAULT_GRID;
+	private int visibleX; // grids fit in the panel, at least one pixel per grid
+	private int visibleY;
+	private volatile SimulationSnapshot latest; // the last delivered state
+	private SimulationSnapshot snapshot;        // the state shown by the current frame
+	// cached land, ocean, labels and port, rebuilt when the panel or the ocean is resized
+	private BufferedImage background;
+	private int backgroundGridX;
+	private int backgroundGridY;
+	// oil raster, only changed grids are redrawn
+	private final OilLayer oilLayer = new OilLayer();
 	
 	// Swing calls when a redraw is needed
 	@Override
@@ -58,24 +62,52 @@ public class MyCanvas extends JPanel implements Observer {
 	}
 
 	// Draw the contents of the panel
-	private void drawCanvas(Graphics g) {
+	void drawCanvas(Graphics g) {
 		Graphics2D g2d = (Graphics2D) g;
+		// the latest delivered state, the simulation may go on while drawing it
+		snapshot = latest;
+		if (snapshot != null) {
+			maxGridX = snapshot.getMaxGridX();
+			maxGridY = snapshot.getMaxGridY();
+		}
 		// default setting
 		size = getSize();
 		halfWidth  = size.width  /2;
 		halfHeight = size.height /2;
-		gridWidth  = (size.width/10*9)  /Simulation.MAX_GRID;
-		gridHeight = (size.height/10*9) /Simulation.MAX_GRID;
-		edgeX = gridWidth  *Simulation.MAX_GRID;
-		edgeY = gridHeight *Simulation.MAX_GRID;
-		g2d.setFont(new Font("default", Font.BOLD, 12));
+		gridWidth  = Math.max(1, (size.width/10*9)  /maxGridX);
+		gridHeight = Math.max(1, (size.height/10*9) /maxGridY);
+		visibleX = Math.min(maxGridX, (size.width/10*9)  /gridWidth);
+		visibleY = Math.min(maxGridY, (size.height/10*9) /gridHeight);
+		edgeX = gridWidth  *visibleX;
+		edgeY = gridHeight *visibleY;
+		g2d.setFont(FONT);
 		
-		drawLand(g2d);
-		drawOcean(g2d);
+		drawBackground(g2d);
 		drawOil(g2d);
 		drawWind(g2d);
 		drawBoat(g2d);
-		drawStation(g2d);
+	}
+	
+	// the static layers, drawn into an image once and copied every frame
+	private void drawBackground(Graphics2D g2d) {
+		int width  = Math.max(1, size.width);
+		int height = Math.max(1, size.height);
+		if (background == null || background.getWidth() != width || background.getHeight() != height
+				|| backgroundGridX != maxGridX || backgroundGridY != maxGridY) {
+			GraphicsConfiguration gc = getGraphicsConfiguration();
+			background = (gc != null) ? gc.createCompatibleImage(width, height)
+					: new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			backgroundGridX = maxGridX;
+			backgroundGridY = maxGridY;
+			
+			Graphics2D bg = background.createGraphics();
+			bg.setFont(FONT);
+			drawLand(bg);
+			drawOcean(bg);
+			drawStation(bg);
+			bg.dispose();
+		}
+		g2d.drawImage(background, 0, 0, null);
 	}
 	
 	private void drawStation(Graphics2D g2d) {
@@ -85,9 +117,13 @@ public class MyCanvas extends JPanel implements Observer {
 	}
 
 	private void drawWind(Graphics2D g2d) {
-		if (wind == null) wind = Direction.NO;
-		if (oilGridList == null) oilGridList = new LinkedList<>();
-		if (boatList == null) boatList = new LinkedList<>();
+		// before the simulation has published anything
+		Direction wind = (snapshot == null) ? Direction.NO : snapshot.getWind();
+		int maxWindIntensityFlg = (snapshot == null) ? 0 : snapshot.getWindIntensityFlg();
+		int maxWindDirectionFlg = (snapshot == null) ? 0 : snapshot.getMaxWindDirectionFlg();
+		int maxDarkerFlg = (snapshot == null) ? 0 : snapshot.getMaxDarkerFlg();
+		int oilCount = (snapshot == null) ? 0 : snapshot.getOilCount();
+		int boatCount = (snapshot == null) ? 0 : snapshot.getBoatCount();
 		int descGH = gridHeight*DESC_HEIGHT;
 		
 		g2d.setColor(Color.LIGHT_GRAY);
@@ -99,11 +135,11 @@ public class MyCanvas extends JPanel implements Observer {
 			g2d.drawString("change rate: 1/"+maxWindDirectionFlg, edgeX+5, descGH*4);
 		
 		g2d.drawString("[OIL]", edgeX+5, descGH*6);
-		g2d.drawString("remain: "+oilGridList.size(), edgeX+5, descGH*7); 
+		g2d.drawString("remain: "+oilCount, edgeX+5, descGH*7); 
 		g2d.drawString("darker rate: 1/"+maxDarkerFlg, edgeX+5, descGH*8); 
 		
 		g2d.drawString("[BOAT]", edgeX+5, descGH*10);
-		g2d.drawString("count: "+boatList.size(), edgeX+5, descGH*11); 
+		g2d.drawString("count: "+boatCount, edgeX+5, descGH*11); 
 	}
 
 	private void drawLand(Graphics2D g2d) {
@@ -116,8 +152,8 @@ public class MyCanvas extends JPanel implements Observer {
 
 	// drawOceanGrid
 	private void drawOcean(Graphics2D g2d) {
-		for (int i = 0; i < Simulation.MAX_GRID; i++) {
-			for (int j = 0; j < Simulation.MAX_GRID; j++) {
+		for (int i = 0; i < visibleX; i++) {
+			for (int j = 0; j < visibleY; j++) {
 				int startx = i * gridWidth;
 				int starty = j * gridHeight;
 				g2d.setColor(drawWaveColor(OCEAN_CLR, j));
@@ -140,24 +176,17 @@ public class MyCanvas extends JPanel implements Observer {
 
 	// drawOilGrid
 	private void drawOil(Graphics2D g2d) {
-		if (oilGridList == null) return;
-		
-		oilGridList.forEach(oilGrid -> {
-			int startx = oilGrid.getX() * gridWidth;
-			int starty = oilGrid.getY() * gridHeight;
-			g2d.setColor(drawWaveColor(oilGrid.getColor(), oilGrid.getY()));
-			g2d.fillRect(startx, drawWaveLine(oilGrid.getX(),starty), gridWidth, gridHeight);
-		});
+		if (snapshot == null) return;
+		oilLayer.draw(g2d, snapshot.getOil(), visibleX, visibleY, gridWidth, gridHeight);
 	}
 	
 	// my gray boat
 	private void drawBoat(Graphics2D g2d) {
-		if (boatList == null) return;
+		if (snapshot == null) return;
 		
-		for (int i=0; i<boatList.size(); i++) {
-			Boat boat = boatList.get(i);
-			int x = boat.getX();
-			int y = boat.getY();
+		for (int i=0; i<snapshot.getBoatCount(); i++) {
+			int x = snapshot.getBoatX(i);
+			int y = snapshot.getBoatY(i);
 			// draw boat
 			g2d.setColor(Color.WHITE);
 			g2d.fillRect((x  )*gridWidth, (y-1)*gridHeight, BOAT_SIZE, BOAT_SIZE);
@@ -171,25 +200,20 @@ public class MyCanvas extends JPanel implements Observer {
 			
 			// show boat's name and id
 			g2d.setColor(Color.BLACK);
-			g2d.drawString(boat.getName(), (x-2)*gridWidth , (y+2)*gridHeight); 
+			g2d.drawString(snapshot.getBoatName(i), (x-2)*gridWidth , (y+2)*gridHeight); 
 			
 			// show boat's status
 			g2d.setColor(Color.ORANGE);
-			g2d.drawString(boat.toString(), 10, size.height-10*(i+1));
+			g2d.drawString(snapshot.describeBoat(i), 10, size.height-10*(i+1));
 		}
 	}
 	
-	@Override
-	public void update(Observable o, Object arg) {
-		if (arg instanceof Simulation) {
-			mySim = (Simulation) arg;
-			boatList = mySim.getBoatList();
-			oilGridList = mySim.getOilList();
-			wind = mySim.getWind();
-			maxDarkerFlg = mySim.getMaxDarkerFlg();  
-			maxWindIntensityFlg = mySim.getWindIntensityFlg();
-			maxWindDirectionFlg = mySim.getMaxWindDirectionFlg();  
-		}
+	/**
+	 * show a new state of the simulation
+	 * @param snapshot
+	 */
+	public void update(SimulationSnapshot snapshot) {
+		latest = snapshot;
 		repaint(); // Tell the GUI thread that it should schedule a paint() call
 	}
 	
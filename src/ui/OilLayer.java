@@ -0,0 +1,135 @@
+/*
+ * Copyright All rights reserved.
+ * File: OilLayer.java
+ * Author: Mon-Hong Shen
+ * Date: 2020/08/06
+ * Version: 1.0
+ * JDK: JDK 1.8.0_241
+ */
+package ui;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+import absim.OilField;
+import absim.OilShade;
+import absim.OilSnapshot;
+
+/**
+ * The oil layer of MyCanvas: a raster with one pixel per visible grid.
+ * Only the chunks of the OilSnapshot that changed since the last frame are redrawn
+ * (an unchanged chunk is the same object), everything is redrawn when the oil gets darker.
+ * The raster is scaled to the canvas by a single drawImage.
+ * @author Mon-Hong Shen
+ */
+class OilLayer {
+
+	// palette: 0=transparent, then one color per level, then the brighter wave colors (every 5th row)
+	private static final byte NO_OIL = 0;
+	private static final int LEVELS = OilShade.MAX_LEVEL - OilShade.MIN_LEVEL + 1;
+	private static final IndexColorModel PALETTE;
+	static {
+		int[] rgb = new int[1 + 2*LEVELS];
+		for (int level = OilShade.MIN_LEVEL; level <= OilShade.MAX_LEVEL; level++) {
+			rgb[1 + level - OilShade.MIN_LEVEL] = OilShade.rgb(level);
+			rgb[1 + LEVELS + level - OilShade.MIN_LEVEL] = OilShade.color(level).brighter().getRGB();
+		}
+		PALETTE = new IndexColorModel(8, rgb.length, rgb, 0, false, NO_OIL, DataBuffer.TYPE_BYTE);
+	}
+
+	private BufferedImage raster;
+	private byte[] pixels;
+	private int width;  // grids in the raster
+	private int height;
+	// what the raster shows
+	private OilSnapshot shown;
+	private OilSnapshot.Chunk[] drawn; // by chunk index
+	private int[] drawnFrame;          // the last frame showing the chunk
+	private int frame;
+
+	/**
+	 * draw the visible grids of the oil
+	 * @param g2d
+	 * @param oil
+	 * @param visibleX grids in x
+	 * @param visibleY grids in y
+	 * @param gridWidth pixels of a grid
+	 * @param gridHeight pixels of a grid
+	 */
+	void draw(Graphics2D g2d, OilSnapshot oil, int visibleX, int visibleY, int gridWidth, int gridHeight) {
+		if (oil == null || visibleX <= 0 || visibleY <= 0) return;
+
+		int chunks = ((oil.getWidth() + OilField.CHUNK-1) / OilField.CHUNK) * ((oil.getHeight() + OilField.CHUNK-1) / OilField.CHUNK);
+		if (raster == null || width != visibleX || height != visibleY || drawn.length != chunks
+				|| shown.getWidth() != oil.getWidth()) {
+			width = visibleX;
+			height = visibleY;
+			raster = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, PALETTE);
+			pixels = ((DataBufferByte) raster.getRaster().getDataBuffer()).getData();
+			drawn = new OilSnapshot.Chunk[chunks];
+			drawnFrame = new int[chunks];
+			shown = null;
+		}
+		if (shown == null || shown.getAge() != oil.getAge())
+			Arrays.fill(drawn, null);
+
+		frame++;
+		for (int i = 0; i < oil.chunkCount(); i++) {
+			OilSnapshot.Chunk chunk = oil.chunk(i);
+			if (drawn[chunk.getIndex()] != chunk) {
+				redraw(oil, chunk);
+				drawn[chunk.getIndex()] = chunk;
+			}
+			drawnFrame[chunk.getIndex()] = frame;
+		}
+		// the chunks cleaned since the last frame
+		if (shown != null) {
+			for (int i = 0; i < shown.chunkCount(); i++) {
+				OilSnapshot.Chunk chunk = shown.chunk(i);
+				if (drawnFrame[chunk.getIndex()] != frame) {
+					erase(chunk);
+					drawn[chunk.getIndex()] = null;
+				}
+			}
+		}
+		shown = oil;
+
+		g2d.drawImage(raster, 0, 0, width*gridWidth, height*gridHeight, 0, 0, width, height, null);
+	}
+
+	private void redraw(OilSnapshot oil, OilSnapshot.Chunk chunk) {
+		int ox = chunk.getOriginX();
+		int oy = chunk.getOriginY();
+		int maxX = Math.min(OilField.CHUNK, width - ox);
+		int maxY = Math.min(OilField.CHUNK, height - oy);
+		for (int ly = 0; ly < maxY; ly++) {
+			int y = oy + ly;
+			int base = y*width + ox;
+			int wave = (y%5==0) ? LEVELS : 0;
+			long row = chunk.getRow(ly);
+			for (int lx = 0; lx < maxX; lx++) {
+				if ((row & (1L << lx)) == 0) {
+					pixels[base + lx] = NO_OIL;
+					continue;
+				}
+				int level = Math.min(Math.max(oil.getLevel(chunk, lx, ly), OilShade.MIN_LEVEL), OilShade.MAX_LEVEL);
+				pixels[base + lx] = (byte) (1 + wave + level - OilShade.MIN_LEVEL);
+			}
+		}
+	}
+
+	private void erase(OilSnapshot.Chunk chunk) {
+		int ox = chunk.getOriginX();
+		int oy = chunk.getOriginY();
+		int maxX = Math.min(OilField.CHUNK, width - ox);
+		int maxY = Math.min(OilField.CHUNK, height - oy);
+		for (int ly = 0; ly < maxY && maxX > 0; ly++) {
+			int base = (oy + ly)*width + ox;
+			Arrays.fill(pixels, base, base + maxX, NO_OIL);
+		}
+	}
+}